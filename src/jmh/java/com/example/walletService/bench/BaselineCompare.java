@@ -0,0 +1,105 @@
+package com.example.walletService.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result (-rf json -prof gc) with a stored baseline: score (throughput, or time for
+ * avgt/sample modes) and normalized allocation (gc.alloc.rate.norm, bytes per operation) per benchmark and
+ * parameter set. Exits with 1 if any benchmark regressed by more than the threshold, so it can gate a build.
+ * <p>
+ * Usage: {@code BaselineCompare <baseline.json> <result.json> [thresholdPct]}
+ */
+public final class BaselineCompare {
+
+    private static final String ALLOC_NORM = "·gc.alloc.rate.norm";
+
+    private record Result(String mode, double score, Double allocBytesPerOp) {}
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineCompare <baseline.json> <result.json> [thresholdPct]");
+            System.exit(2);
+        }
+        Path baselinePath = Path.of(args[0]);
+        Path resultPath = Path.of(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        if (!Files.exists(baselinePath)) {
+            System.out.println("No baseline at " + baselinePath + "; store this run as one with:");
+            System.out.println("  cp " + resultPath + " " + baselinePath);
+            return;
+        }
+
+        Map<String, Result> baseline = read(baselinePath);
+        Map<String, Result> current = read(resultPath);
+        boolean regressed = false;
+        System.out.printf("%-70s %14s %14s %8s %12s %12s %8s%n",
+                "benchmark", "base score", "score", "Δ%", "base B/op", "B/op", "Δ%");
+        for (Map.Entry<String, Result> e : current.entrySet()) {
+            Result now = e.getValue();
+            Result base = baseline.get(e.getKey());
+            if (base == null) {
+                System.out.printf("%-70s %14s %14.3f %8s  (new)%n", e.getKey(), "-", now.score(), "-");
+                continue;
+            }
+            // Throughput: higher is better; time modes: lower is better
+            boolean higherIsBetter = "thrpt".equals(now.mode());
+            double scoreDelta = pct(base.score(), now.score());
+            boolean scoreRegressed = higherIsBetter ? scoreDelta < -threshold : scoreDelta > threshold;
+            Double allocDelta = base.allocBytesPerOp() != null && now.allocBytesPerOp() != null
+                    ? pct(base.allocBytesPerOp(), now.allocBytesPerOp()) : null;
+            // A few bytes per op of noise on allocation-free paths are not a regression
+            boolean allocRegressed = allocDelta != null && allocDelta > threshold
+                    && now.allocBytesPerOp() - base.allocBytesPerOp() > 16;
+            regressed |= scoreRegressed || allocRegressed;
+            System.out.printf("%-70s %14.3f %14.3f %8.1f %12s %12s %8s%s%n",
+                    e.getKey(), base.score(), now.score(), scoreDelta,
+                    format(base.allocBytesPerOp()), format(now.allocBytesPerOp()),
+                    allocDelta == null ? "-" : String.format("%.1f", allocDelta),
+                    scoreRegressed || allocRegressed ? "  REGRESSION" : "");
+        }
+        if (regressed) {
+            System.out.println("Regression beyond " + threshold + "% against " + baselinePath);
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Result> read(Path file) throws IOException {
+        JsonNode root = new ObjectMapper().readTree(file.toFile());
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (JsonNode run : root) {
+            JsonNode primary = run.path("primaryMetric");
+            JsonNode alloc = run.path("secondaryMetrics").path(ALLOC_NORM);
+            results.put(key(run), new Result(
+                    run.path("mode").asText(),
+                    primary.path("score").asDouble(),
+                    alloc.isMissingNode() ? null : alloc.path("score").asDouble()));
+        }
+        return results;
+    }
+
+    /** Benchmark name plus its parameters in a stable order, e.g. "...WalletServiceBenchmark.topupSpread{engine=jpa}". */
+    private static String key(JsonNode run) {
+        Map<String, String> params = new TreeMap<>();
+        for (Map.Entry<String, JsonNode> p : run.path("params").properties()) {
+            params.put(p.getKey(), p.getValue().asText());
+        }
+        String name = run.path("benchmark").asText().replace("com.example.walletService.", "");
+        return params.isEmpty() ? name : name + params;
+    }
+
+    private static double pct(double base, double now) {
+        return base == 0 ? 0 : (now - base) / base * 100;
+    }
+
+    private static String format(Double bytes) {
+        return bytes == null ? "-" : String.format("%.1f", bytes);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.walletService.bench;
+
+import com.example.walletService.WalletServiceApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The application context (no web server) on a throwaway embedded Postgres: Flyway migrates a fresh
+ * database, background jobs are off so they do not disturb measurements. Extra properties (e.g.
+ * wallet.transfer.engine=native) are passed as "key=value".
+ */
+public final class EmbeddedWalletService implements AutoCloseable {
+
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext context;
+
+    public EmbeddedWalletService(String... properties) throws IOException {
+        this.postgres = EmbeddedPostgres.builder().start();
+        List<String> props = new ArrayList<>(List.of(
+                "spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                "spring.datasource.username=postgres",
+                "spring.datasource.password=postgres",
+                "wallet.reconciliation.enabled=false",
+                "wallet.ledger.partitions.enabled=false",
+                "wallet.idempotency.purge.enabled=false",
+                "logging.level.root=WARN"));
+        props.addAll(List.of(properties));
+        this.context = new SpringApplicationBuilder(WalletServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(props.toArray(String[]::new))
+                .run();
+    }
+
+    public <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        postgres.close();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.walletService.bench;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear latency histogram in microseconds: exact below 1 ms, then 64 sub-buckets per power
+ * of two (≤ 1.6% relative error), up to ~35 minutes. Recording is two atomic increments.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int LINEAR = 1024;
+    private static final int MAX_EXP = 31;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (MAX_EXP - 10 + 1) * SUB);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    void record(long nanos) {
+        long micros = Math.max(0, nanos / 1_000);
+        counts.incrementAndGet(index(micros));
+        total.increment();
+        sumMicros.add(micros);
+    }
+
+    long count() {
+        return total.sum();
+    }
+
+    double meanMicros() {
+        long n = total.sum();
+        return n == 0 ? 0 : (double) sumMicros.sum() / n;
+    }
+
+    /** Upper bound of the bucket holding the given percentile (0–100), in microseconds. */
+    long percentileMicros(double pct) {
+        long n = total.sum();
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(pct / 100 * n);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) return upperBound(i);
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    private static int index(long micros) {
+        if (micros < LINEAR) return (int) micros;
+        int exp = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXP);
+        long sub = exp == MAX_EXP && micros >= (1L << (MAX_EXP + 1)) ? SUB - 1 : (micros >>> (exp - SUB_BITS)) & (SUB - 1);
+        return LINEAR + (exp - 10) * SUB + (int) sub;
+    }
+
+    private static long upperBound(int index) {
+        if (index < LINEAR) return index;
+        int exp = 10 + (index - LINEAR) / SUB;
+        int sub = (index - LINEAR) % SUB;
+        return (1L << exp) + ((long) (sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.walletService.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Direct JDBC access for the load generator: wallet provisioning before the run and the integrity checks
+ * after it (double entry per transaction, stored balances vs ledger, no overdrawn user wallet).
+ */
+final class LedgerVerifier {
+
+    /** Transactions whose legs do not sum to zero, or that do not have exactly two legs. */
+    private static final String UNBALANCED_TRANSACTIONS = """
+            SELECT count(*) FROM (
+                SELECT transaction_id FROM ledger_entries
+                GROUP BY transaction_id
+                HAVING SUM(amount) <> 0 OR COUNT(*) <> 2
+            ) t""";
+
+    /** User wallets whose stored balance differs from live ledger legs plus archived partition totals. */
+    private static final String BALANCE_DRIFT = """
+            SELECT count(*) FROM wallets w
+            WHERE w.user_id IS NOT NULL
+              AND w.balance <> COALESCE((SELECT SUM(e.amount) FROM ledger_entries e WHERE e.wallet_id = w.id), 0)
+                             + COALESCE((SELECT SUM(a.amount) FROM ledger_archive_totals a WHERE a.wallet_id = w.id), 0)""";
+
+    private static final String NEGATIVE_BALANCES =
+            "SELECT count(*) FROM wallets WHERE user_id IS NOT NULL AND balance < 0";
+
+    private final Workload workload;
+
+    LedgerVerifier(Workload workload) {
+        this.workload = workload;
+    }
+
+    /** Creates Gold Coins wallets for users 1..n that do not have one yet. */
+    int provisionWallets(int users) throws SQLException {
+        try (Connection c = connect();
+             PreparedStatement ps = c.prepareStatement("""
+                     INSERT INTO wallets (user_id, asset_type_id)
+                     SELECT g, 1 FROM generate_series(1, ?) g
+                     ON CONFLICT (user_id, asset_type_id) WHERE user_id IS NOT NULL DO NOTHING""")) {
+            ps.setInt(1, users);
+            return ps.executeUpdate();
+        }
+    }
+
+    record Report(long unbalancedTransactions, long driftedWallets, long negativeWallets) {
+        boolean ok() {
+            return unbalancedTransactions == 0 && driftedWallets == 0 && negativeWallets == 0;
+        }
+    }
+
+    Report verify() throws SQLException {
+        try (Connection c = connect()) {
+            return new Report(count(c, UNBALANCED_TRANSACTIONS), count(c, BALANCE_DRIFT), count(c, NEGATIVE_BALANCES));
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(workload.jdbcUrl(), workload.jdbcUser(), workload.jdbcPassword());
+    }
+
+    private static long count(Connection c, String sql) throws SQLException {
+        try (Statement st = c.createStatement(); ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.walletService.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HTTP load generator against a running instance: topup/bonus/spend/balance/history with a Zipfian user
+ * distribution, a read/write mix, a share of replayed idempotency keys (client retries) and N concurrent
+ * clients on virtual threads. Closed loop: each client sends its next request when the previous one
+ * returned, so latencies under saturation understate what an open-loop client would see.
+ * <p>
+ * Reports throughput and latency percentiles per operation, checks that every replayed key returned the
+ * original transaction id, and finally verifies the ledger over JDBC (see {@link LedgerVerifier}).
+ * Exits with 1 if any check fails.
+ * <p>
+ * Usage: {@code mvn -Pbench test-compile exec:exec@load -Dload.args="--profile=hot-wallet --concurrency=512"};
+ * settings and profiles are listed in {@link Workload}.
+ */
+public final class LoadGenerator {
+
+    private enum Op { TOPUP, BONUS, SPEND, BALANCE, HISTORY }
+
+    /** A write that was sent; replays reuse it verbatim (same user, amount and key), like a client retry. */
+    private record Sent(Op op, long userId, long amount, String key) {}
+
+    private static final class Stats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+    }
+
+    private static final int RECENT_WRITES = 4096;
+
+    private final Workload workload;
+    private final ZipfSampler users;
+    private final HttpClient http;
+    private final ObjectMapper json = new ObjectMapper();
+    private final Map<Op, Stats> stats = new EnumMap<>(Op.class);
+    private final AtomicReferenceArray<Sent> recent = new AtomicReferenceArray<>(RECENT_WRITES);
+    private final Map<String, Long> firstTxByKey = new ConcurrentHashMap<>();
+    private final LongAdder duplicatesSent = new LongAdder();
+    private final LongAdder idempotencyViolations = new LongAdder();
+    private final String runId = UUID.randomUUID().toString().substring(0, 8);
+    private volatile long measureFromNanos;
+
+    private LoadGenerator(Workload workload, ExecutorService executor) {
+        this.workload = workload;
+        this.users = new ZipfSampler(workload.users(), workload.zipfS());
+        this.http = HttpClient.newBuilder()
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        for (Op op : Op.values()) stats.put(op, new Stats());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Workload workload = Workload.parse(args);
+        LedgerVerifier verifier = new LedgerVerifier(workload);
+        int created = verifier.provisionWallets(workload.users());
+        System.out.printf("Profile %s: %d users (%d wallets created), Zipf s=%.2f, reads %.0f%%, duplicates %.0f%%, "
+                        + "%d clients, %ds warmup + %ds%n",
+                workload.profile(), workload.users(), created, workload.zipfS(), workload.readRatio() * 100,
+                workload.duplicateRatio() * 100, workload.concurrency(), workload.warmupSeconds(),
+                workload.durationSeconds());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            LoadGenerator generator = new LoadGenerator(workload, executor);
+            System.out.printf("Top 10 users get %.1f%% of requests%n", generator.users.headShare(10) * 100);
+            boolean clean = generator.run(executor);
+            LedgerVerifier.Report report = verifier.verify();
+            System.out.printf("Ledger: %d unbalanced transactions, %d wallets drifted from ledger, %d negative balances%n",
+                    report.unbalancedTransactions(), report.driftedWallets(), report.negativeWallets());
+            if (!clean || !report.ok()) {
+                System.out.println("FAILED");
+                System.exit(1);
+            }
+            System.out.println("OK");
+        }
+    }
+
+    private boolean run(ExecutorService executor) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFromNanos = start + workload.warmupSeconds() * 1_000_000_000L;
+        long endNanos = measureFromNanos + workload.durationSeconds() * 1_000_000_000L;
+        List<Future<?>> clients = new ArrayList<>();
+        for (int i = 0; i < workload.concurrency(); i++) {
+            clients.add(executor.submit(() -> {
+                while (System.nanoTime() < endNanos) {
+                    step();
+                }
+            }));
+        }
+        for (Future<?> client : clients) {
+            try {
+                client.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Client failed", e.getCause());
+            }
+        }
+        report(workload.durationSeconds());
+        return idempotencyViolations.sum() == 0;
+    }
+
+    private void step() {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        long userId = users.sample();
+        if (rnd.nextDouble() < workload.readRatio()) {
+            Op op = rnd.nextBoolean() ? Op.BALANCE : Op.HISTORY;
+            String path = op == Op.BALANCE ? "/wallet/" + userId + "/balance" : "/wallet/" + userId + "/transactions?limit=50";
+            send(op, HttpRequest.newBuilder(URI.create(workload.baseUrl() + path)).GET(), null);
+            return;
+        }
+
+        Sent write;
+        Sent replay = rnd.nextDouble() < workload.duplicateRatio() ? recent.get(rnd.nextInt(RECENT_WRITES)) : null;
+        if (replay != null) {
+            write = replay;
+            duplicatesSent.increment();
+        } else {
+            write = newWrite(userId, rnd);
+            Sent evicted = recent.getAndSet(rnd.nextInt(RECENT_WRITES), write);
+            if (evicted != null) firstTxByKey.remove(evicted.key());
+        }
+        String path = switch (write.op()) {
+            case TOPUP -> "/wallet/topup";
+            case BONUS -> "/wallet/bonus";
+            default -> "/wallet/spend";
+        };
+        String body = "{\"userId\":" + write.userId() + ",\"amount\":" + write.amount() + "}";
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(workload.baseUrl() + path))
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", write.key())
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        send(write.op(), request, write);
+    }
+
+    private Sent newWrite(long userId, ThreadLocalRandom rnd) {
+        int weights = workload.topupWeight() + workload.bonusWeight() + workload.spendWeight();
+        int pick = rnd.nextInt(Math.max(1, weights));
+        Op op = pick < workload.topupWeight() ? Op.TOPUP
+                : pick < workload.topupWeight() + workload.bonusWeight() ? Op.BONUS : Op.SPEND;
+        long amount = switch (op) {
+            case TOPUP -> rnd.nextLong(10, 1_000);
+            case BONUS -> rnd.nextLong(1, 100);
+            default -> rnd.nextLong(1, 200);
+        };
+        return new Sent(op, userId, amount, "load-" + runId + "-" + UUID.randomUUID());
+    }
+
+    private void send(Op op, HttpRequest.Builder request, Sent write) {
+        long started = System.nanoTime();
+        int status;
+        String body;
+        try {
+            HttpResponse<String> response = http.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            body = response.body();
+        } catch (IOException e) {
+            status = -1;
+            body = null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long elapsed = System.nanoTime() - started;
+        if (write != null && status == 200) checkIdempotency(write, body);
+        if (started < measureFromNanos) return;
+
+        Stats s = stats.get(op);
+        s.latency.record(elapsed);
+        // 400 insufficient funds, 409 key in progress, 503 shed: expected answers under load, not failures
+        if (status == 400 || status == 409 || status == 503) s.rejected.increment();
+        else if (status != 200) s.errors.increment();
+    }
+
+    /** Every response for a key must carry the transaction id of the first one. */
+    private void checkIdempotency(Sent write, String body) {
+        Long txId;
+        try {
+            JsonNode node = json.readTree(body);
+            txId = node.path("transactionId").isMissingNode() ? null : node.path("transactionId").asLong();
+        } catch (IOException e) {
+            txId = null;
+        }
+        if (txId == null) return;
+        Long first = firstTxByKey.putIfAbsent(write.key(), txId);
+        if (first != null && !first.equals(txId)) {
+            idempotencyViolations.increment();
+            System.out.printf("Idempotency violation: key %s returned %d, first %d%n", write.key(), txId, first);
+        }
+    }
+
+    private void report(int seconds) {
+        System.out.printf("%-8s %10s %9s %9s %9s %9s %9s %9s %9s %8s %8s%n",
+                "op", "requests", "req/s", "mean ms", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "rejected", "errors");
+        long total = 0;
+        for (Op op : Op.values()) {
+            Stats s = stats.get(op);
+            long n = s.latency.count();
+            total += n;
+            System.out.printf("%-8s %10d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f %8d %8d%n",
+                    op, n, (double) n / seconds, s.latency.meanMicros() / 1000,
+                    ms(s.latency.percentileMicros(50)), ms(s.latency.percentileMicros(90)),
+                    ms(s.latency.percentileMicros(99)), ms(s.latency.percentileMicros(99.9)),
+                    ms(s.latency.percentileMicros(100)), s.rejected.sum(), s.errors.sum());
+        }
+        System.out.printf("Total %.1f req/s; %d replayed keys, %d idempotency violations%n",
+                (double) total / seconds, duplicatesSent.sum(), idempotencyViolations.sum());
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+}
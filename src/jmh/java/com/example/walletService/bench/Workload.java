@@ -0,0 +1,92 @@
+package com.example.walletService.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Load generator settings. A profile supplies defaults; any {@code --key=value} argument overrides them.
+ *
+ * @param users          user ids 1..users; wallets are provisioned for them before the run
+ * @param zipfS          Zipf exponent of the user distribution (0 = uniform)
+ * @param readRatio      share of requests that are reads (balance and history, half each)
+ * @param topupWeight    relative weight of topups among writes (likewise bonus, spend)
+ * @param duplicateRatio share of writes that replay a recent idempotency key (client retries)
+ * @param concurrency    concurrent clients, one virtual thread each (closed loop)
+ */
+record Workload(
+        String profile,
+        String baseUrl,
+        String jdbcUrl,
+        String jdbcUser,
+        String jdbcPassword,
+        int users,
+        double zipfS,
+        double readRatio,
+        int topupWeight,
+        int bonusWeight,
+        int spendWeight,
+        double duplicateRatio,
+        int concurrency,
+        int durationSeconds,
+        int warmupSeconds
+) {
+
+    /**
+     * skewed:     production-like: whales via Zipf 1.1, 30% reads, 5% retried keys (default)
+     * uniform:    same mix, no skew (baseline for the skew's effect)
+     * hot-wallet: almost everything on the first few users, write-heavy (row lock contention)
+     * duplicates: 30% replayed keys (idempotency paths under load)
+     */
+    private static final Map<String, Map<String, String>> PROFILES = Map.of(
+            "skewed", Map.of(),
+            "uniform", Map.of("zipf-s", "0"),
+            "hot-wallet", Map.of("zipf-s", "2.0", "read-ratio", "0.1", "spend-weight", "3"),
+            "duplicates", Map.of("duplicate-ratio", "0.3"));
+
+    private static final Map<String, String> DEFAULTS = Map.ofEntries(
+            Map.entry("base-url", "http://localhost:8080"),
+            Map.entry("jdbc-url", "jdbc:postgresql://localhost:5432/walletdb"),
+            Map.entry("jdbc-user", "wallet"),
+            Map.entry("jdbc-password", "wallet123"),
+            Map.entry("users", "10000"),
+            Map.entry("zipf-s", "1.1"),
+            Map.entry("read-ratio", "0.3"),
+            Map.entry("topup-weight", "3"),
+            Map.entry("bonus-weight", "1"),
+            Map.entry("spend-weight", "6"),
+            Map.entry("duplicate-ratio", "0.05"),
+            Map.entry("concurrency", "256"),
+            Map.entry("duration-s", "60"),
+            Map.entry("warmup-s", "10"));
+
+    static Workload parse(String[] args) {
+        Map<String, String> given = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            given.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        String profile = given.getOrDefault("profile", "skewed");
+        Map<String, String> presets = PROFILES.get(profile);
+        if (presets == null) {
+            throw new IllegalArgumentException("Unknown profile " + profile + "; one of " + PROFILES.keySet());
+        }
+        Map<String, String> c = new HashMap<>(DEFAULTS);
+        c.putAll(presets);
+        c.putAll(given);
+        return new Workload(profile,
+                c.get("base-url"), c.get("jdbc-url"), c.get("jdbc-user"), c.get("jdbc-password"),
+                Integer.parseInt(c.get("users")),
+                Double.parseDouble(c.get("zipf-s")),
+                Double.parseDouble(c.get("read-ratio")),
+                Integer.parseInt(c.get("topup-weight")),
+                Integer.parseInt(c.get("bonus-weight")),
+                Integer.parseInt(c.get("spend-weight")),
+                Double.parseDouble(c.get("duplicate-ratio")),
+                Integer.parseInt(c.get("concurrency")),
+                Integer.parseInt(c.get("duration-s")),
+                Integer.parseInt(c.get("warmup-s")));
+    }
+}
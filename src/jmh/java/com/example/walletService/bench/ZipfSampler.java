@@ -0,0 +1,36 @@
+package com.example.walletService.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipf-distributed ranks 1..n: P(rank k) ∝ 1 / k^s. s = 0 is uniform; s ≈ 1 is typical "few whales, long
+ * tail" traffic; larger s concentrates more load on the first ranks. Sampling is a binary search over the
+ * precomputed CDF (n doubles), thread-safe.
+ */
+final class ZipfSampler {
+
+    private final double[] cdf;
+
+    ZipfSampler(int n, double s) {
+        if (n <= 0 || s < 0) throw new IllegalArgumentException("n > 0, s >= 0");
+        cdf = new double[n];
+        double sum = 0;
+        for (int k = 1; k <= n; k++) {
+            sum += 1 / Math.pow(k, s);
+            cdf[k - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) cdf[i] /= sum;
+    }
+
+    int sample() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int i = Arrays.binarySearch(cdf, u);
+        return (i >= 0 ? i : -i - 1) + 1;
+    }
+
+    /** Share of samples expected to land on the first {@code ranks} ranks. */
+    double headShare(int ranks) {
+        return cdf[Math.min(ranks, cdf.length) - 1];
+    }
+}
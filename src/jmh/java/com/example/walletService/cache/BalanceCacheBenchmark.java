@@ -0,0 +1,82 @@
+package com.example.walletService.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process caches: the segmented {@link BoundedLocalCache} and the versioned {@link NearBalanceCache}
+ * (local bus, no Redis), single-threaded and with 4 threads on a shared instance to show segment contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BalanceCacheBenchmark {
+
+    @Param({"100000"})
+    private int wallets;
+
+    private BoundedLocalCache<Long, Long> local;
+    private NearBalanceCache near;
+
+    @Setup
+    public void setup() {
+        local = new BoundedLocalCache<>(wallets, 0);
+        near = new NearBalanceCache(Optional.empty(), new LocalBalanceInvalidationBus(),
+                new SimpleMeterRegistry(), wallets, 60_000);
+        for (long id = 0; id < wallets; id++) {
+            local.put(id, id);
+            near.put(id, id, 1);
+        }
+    }
+
+    private long randomWallet() {
+        return ThreadLocalRandom.current().nextLong(wallets);
+    }
+
+    @Benchmark
+    public Long localGet() {
+        return local.get(randomWallet());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long localGetContended() {
+        return local.get(randomWallet());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void localPutContended() {
+        long id = randomWallet();
+        local.put(id, id);
+    }
+
+    @Benchmark
+    public Long nearGet() {
+        return near.get(randomWallet());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void nearVersionedPutContended() {
+        near.put(randomWallet(), 100, ThreadLocalRandom.current().nextLong(1, 1_000_000));
+    }
+}
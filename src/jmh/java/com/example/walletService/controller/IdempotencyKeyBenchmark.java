@@ -0,0 +1,46 @@
+package com.example.walletService.controller;
+
+import com.example.walletService.repository.IdempotencyKeyRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request idempotency key handling: header/body resolution and validation in the controller, then
+ * the 128-bit hash used as the idempotency_keys primary key.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdempotencyKeyBenchmark {
+
+    private final String headerKey = " " + UUID.randomUUID() + " ";
+    private final String bodyKey = "campaign-2026-10:user-123456:bonus";
+
+    @Benchmark
+    public String resolveFromHeader() {
+        return WalletController.resolveAndValidateIdempotencyKey(headerKey, null);
+    }
+
+    @Benchmark
+    public String resolveFromBody() {
+        return WalletController.resolveAndValidateIdempotencyKey(null, bodyKey);
+    }
+
+    @Benchmark
+    public UUID hashKey() {
+        return IdempotencyKeyRepository.hash(bodyKey);
+    }
+}
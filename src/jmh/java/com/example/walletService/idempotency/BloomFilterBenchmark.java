@@ -0,0 +1,57 @@
+package com.example.walletService.idempotency;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The seen-keys filter in front of the idempotency SELECT: lookups of known and new keys, and inserts.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BloomFilterBenchmark {
+
+    private static final int KEYS = 1_000_000;
+
+    private RotatingBloomFilter filter;
+    private String[] known;
+
+    @Setup
+    public void setup() {
+        filter = new RotatingBloomFilter(KEYS, 0.01);
+        known = new String[KEYS / 2];
+        for (int i = 0; i < known.length; i++) {
+            known[i] = "42:key-" + i;
+            filter.put(known[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean mightContainKnown() {
+        return filter.mightContain(known[ThreadLocalRandom.current().nextInt(known.length)]);
+    }
+
+    @Benchmark
+    public boolean mightContainNew() {
+        return filter.mightContain("42:new-" + ThreadLocalRandom.current().nextLong());
+    }
+
+    @Benchmark
+    public void put() {
+        filter.put("42:put-" + ThreadLocalRandom.current().nextInt(KEYS));
+    }
+}
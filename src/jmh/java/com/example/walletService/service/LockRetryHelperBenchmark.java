@@ -0,0 +1,57 @@
+package com.example.walletService.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.jpa.JpaSystemException;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Error classification on the retry path: a translated lock exception (fast type check), a SQLSTATE
+ * buried in the cause chain, and a non-retryable error that walks the whole chain.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LockRetryHelperBenchmark {
+
+    private final Throwable translated = new CannotAcquireLockException("lock timeout");
+    private final Throwable nestedSqlState = new JpaSystemException(
+            new RuntimeException("tx failed", new SQLException("deadlock detected", "40P01")));
+    private final Throwable notRetryable = new DataIntegrityViolationException("duplicate key",
+            new SQLException("duplicate key value violates unique constraint", "23505"));
+    private int attempt;
+
+    @Benchmark
+    public boolean isRetryableTranslated() {
+        return LockRetryHelper.isRetryable(translated);
+    }
+
+    @Benchmark
+    public boolean isRetryableNestedSqlState() {
+        return LockRetryHelper.isRetryable(nestedSqlState);
+    }
+
+    @Benchmark
+    public boolean isRetryableNot() {
+        return LockRetryHelper.isRetryable(notRetryable);
+    }
+
+    @Benchmark
+    public long backoffMs() {
+        return LockRetryHelper.backoffMs(attempt++ & 7, 50, 1000);
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.walletService.service;
+
+import com.example.walletService.bench.EmbeddedWalletService;
+import com.example.walletService.dto.TransactionHistoryPage;
+import com.example.walletService.dto.TransactionRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End to end through {@link WalletService} (idempotency, locking, ledger, commit) on an embedded Postgres,
+ * for both transfer engines and, on the JPA engine, both concurrency modes (the native engine always locks,
+ * so its optimistic runs measure the same path). Spread transfers hit random users; hot transfers all hit one user wallet from
+ * 8 threads (row lock contention). History benchmarks read a wallet with {@link #HISTORY_ROWS} ledger legs:
+ * one page, and the full export serialized to NDJSON.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WalletServiceBenchmark {
+
+    private static final long FIRST_USER = 1_000;
+    private static final int USERS = 10_000;
+    private static final long HOT_USER = 1L;
+    private static final long HISTORY_USER = 2L;
+    private static final int HISTORY_ROWS = 10_000;
+
+    @Param({"jpa", "native"})
+    private String engine;
+
+    /** wallet.concurrency.mode: row lock per transfer, or versioned conditional update. */
+    @Param({"pessimistic", "optimistic"})
+    private String concurrencyMode;
+
+    private EmbeddedWalletService app;
+    private WalletService walletService;
+    private ObjectMapper objectMapper;
+    private Long historyWalletId;
+    private final String runId = UUID.randomUUID().toString();
+    private final AtomicLong seq = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        app = new EmbeddedWalletService("wallet.transfer.engine=" + engine,
+                "wallet.concurrency.mode=" + concurrencyMode);
+        walletService = app.bean(WalletService.class);
+        objectMapper = app.bean(ObjectMapper.class);
+        app.bean(JdbcTemplate.class).update(
+                "INSERT INTO wallets (user_id, asset_type_id) SELECT g, 1 FROM generate_series(?, ?) g",
+                FIRST_USER, FIRST_USER + USERS - 1);
+        for (int i = 0; i < HISTORY_ROWS; i++) {
+            walletService.topup(new TransactionRequest(HISTORY_USER, 1L, null), key());
+        }
+        historyWalletId = walletService.getWalletId(HISTORY_USER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        app.close();
+    }
+
+    private String key() {
+        return runId + "-" + seq.incrementAndGet();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long topupSpread() {
+        long user = FIRST_USER + ThreadLocalRandom.current().nextInt(USERS);
+        return walletService.topup(new TransactionRequest(user, 10L, null), key());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long topupHotWallet() {
+        return walletService.topup(new TransactionRequest(HOT_USER, 10L, null), key());
+    }
+
+    /** Replays of one committed key: the idempotency fast path. */
+    @Benchmark
+    public Long duplicateReplay() {
+        return walletService.topup(new TransactionRequest(HOT_USER, 10L, null), runId + "-replay");
+    }
+
+    @Benchmark
+    public TransactionHistoryPage historyPage() {
+        return walletService.getTransactionHistory(HISTORY_USER, 500, null);
+    }
+
+    @Benchmark
+    public void historyExportNdjson() {
+        OutputStream out = OutputStream.nullOutputStream();
+        walletService.streamTransactionHistory(historyWalletId, item -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(item));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+}
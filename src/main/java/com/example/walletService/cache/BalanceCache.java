@@ -2,13 +2,14 @@ package com.example.walletService.cache;
 
 /**
  * Optional cache for wallet balance to reduce DB reads on GET /wallet/{userId}/balance.
- * When Redis is enabled, use cache-aside: read from cache on GET; on miss load from DB and cache.
- * Invalidate (delete) on any write (topup/bonus/spend) for that wallet.
+ * Writes are written through: after a transfer commits, the new balance of each updated wallet is stored
+ * together with its row version (wallets.version). A put never replaces an entry with a newer or equal
+ * version, so out-of-order writers (a slow GET filling a miss, a late transfer) cannot resurrect a stale value.
  */
 public interface BalanceCache {
 
     String KEY_PREFIX = "balance:wallet:";
-    int TTL_SECONDS = 300; // 5 min safety; invalidation on write keeps correctness
+    int TTL_SECONDS = 300; // 5 min safety; versioned write-through keeps correctness
 
     /**
      * Returns cached balance for the wallet, or null if miss or cache disabled.
@@ -16,12 +17,13 @@ public interface BalanceCache {
     Long get(Long walletId);
 
     /**
-     * Stores balance for the wallet (e.g. after loading from DB).
+     * Stores the balance of the wallet at the given row version, unless a newer version is already cached.
      */
-    void put(Long walletId, long balance);
+    void put(Long walletId, long balance, long version);
 
     /**
-     * Invalidates cache for the wallet (call after any topup/bonus/spend touching this wallet).
+     * Drops the cached balance. Prefer {@link #put} with the new row version where it is known: a drop
+     * can race with a slow reader that puts the old value back.
      */
     void invalidate(Long walletId);
 
@@ -0,0 +1,32 @@
+package com.example.walletService.cache;
+
+/**
+ * Propagates balance changes to every instance's local (L1) balance cache: versioned updates after a
+ * committed transfer, plain invalidations otherwise.
+ */
+public interface BalanceInvalidationBus {
+
+    String CHANNEL = "balance:invalidate";
+
+    /**
+     * Notifies all instances (other than this one) that the wallet's cached balance is stale.
+     */
+    void publish(long walletId);
+
+    /**
+     * Notifies all instances (other than this one) of the wallet's new balance at the given version.
+     */
+    void publishUpdate(long walletId, long balance, long version);
+
+    /**
+     * Registers the handler for messages published by other instances.
+     */
+    void subscribe(Listener listener);
+
+    interface Listener {
+
+        void onInvalidate(long walletId);
+
+        void onUpdate(long walletId, long balance, long version);
+    }
+}
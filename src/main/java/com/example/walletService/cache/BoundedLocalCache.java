@@ -0,0 +1,152 @@
+package com.example.walletService.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+
+/**
+ * Small on-heap cache bounded by size (LRU) and TTL. Keys are spread over independently locked
+ * segments to keep lock contention low; each segment is an access-ordered LinkedHashMap.
+ * Uses ReentrantLock rather than synchronized so virtual threads are never pinned.
+ */
+public final class BoundedLocalCache<K, V> {
+
+    private record Entry<V>(V value, long expiresAtNanos) {}
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize total capacity (split evenly over segments)
+     * @param ttlMs   time to live per entry; 0 = no expiry
+     */
+    public BoundedLocalCache(int maxSize, long ttlMs) {
+        int segmentCount = Math.max(1, Math.min(16, Integer.highestOneBit(Math.max(1, maxSize / 64))));
+        int perSegment = Math.max(1, maxSize / segmentCount);
+        // Generic arrays cannot be created directly; the array never leaves this instance
+        @SuppressWarnings("unchecked")
+        Segment<K, V>[] typed = (Segment<K, V>[]) new Segment<?, ?>[segmentCount];
+        this.segments = typed;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(perSegment, evictions);
+        }
+        this.ttlNanos = ttlMs > 0 ? ttlMs * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    /** Returns the value, or null if absent or expired. */
+    public V get(K key) {
+        Segment<K, V> s = segmentFor(key);
+        s.lock.lock();
+        try {
+            Entry<V> e = s.map.get(key);
+            if (e == null) {
+                misses.increment();
+                return null;
+            }
+            if (System.nanoTime() - e.expiresAtNanos() > 0) {
+                s.map.remove(key);
+                evictions.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return e.value();
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        long expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+        Segment<K, V> s = segmentFor(key);
+        s.lock.lock();
+        try {
+            s.map.put(key, new Entry<>(value, expiresAt));
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the value unless a live entry exists and {@code replace.test(current, value)} is false.
+     * The check and the write happen under the segment lock.
+     */
+    public void putIf(K key, V value, BiPredicate<? super V, ? super V> replace) {
+        long now = System.nanoTime();
+        long expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + ttlNanos;
+        Segment<K, V> s = segmentFor(key);
+        s.lock.lock();
+        try {
+            Entry<V> current = s.map.get(key);
+            if (current != null && now - current.expiresAtNanos() <= 0 && !replace.test(current.value(), value)) return;
+            s.map.put(key, new Entry<>(value, expiresAt));
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> s = segmentFor(key);
+        s.lock.lock();
+        try {
+            s.map.remove(key);
+        } finally {
+            s.lock.unlock();
+        }
+    }
+
+    public long size() {
+        long n = 0;
+        for (Segment<K, V> s : segments) {
+            s.lock.lock();
+            try {
+                n += s.map.size();
+            } finally {
+                s.lock.unlock();
+            }
+        }
+        return n;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[(h & 0x7fffffff) % segments.length];
+    }
+
+    private static final class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<K, Entry<V>> map;
+
+        Segment(int capacity, LongAdder evictions) {
+            this.map = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.walletService.cache;
+
+/**
+ * A cached balance with the wallet row version it was read or written at.
+ */
+record CachedBalance(long balance, long version) {}
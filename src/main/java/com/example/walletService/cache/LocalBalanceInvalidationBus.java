@@ -0,0 +1,39 @@
+package com.example.walletService.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-process bus for single-node mode (no Redis) and tests: every subscriber is invoked synchronously.
+ * Several caches sharing one bus behave like several nodes.
+ */
+@Component
+@ConditionalOnMissingBean(RedisBalanceInvalidationBus.class)
+public class LocalBalanceInvalidationBus implements BalanceInvalidationBus {
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(long walletId) {
+        // The publisher's own listener is called too; removing an already removed entry is harmless
+        for (Listener l : listeners) {
+            l.onInvalidate(walletId);
+        }
+    }
+
+    @Override
+    public void publishUpdate(long walletId, long balance, long version) {
+        // Same for updates: re-applying the publisher's own version is a no-op
+        for (Listener l : listeners) {
+            l.onUpdate(walletId, balance, version);
+        }
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.walletService.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * In-process (L1) balance cache, bounded by size and TTL, in front of {@link RedisBalanceCache} when Redis
+ * is enabled, or standalone in single-node mode. Versioned writes are applied locally (never replacing a
+ * newer version) and broadcast to other instances through the {@link BalanceInvalidationBus}, so peers get the
+ * new balance instead of a miss. A Redis hit is kept in L1 at its Redis version. Hit/miss/eviction counts are exported as
+ * wallet.balance.cache.local.* metrics.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "wallet.balance-cache.local.enabled", havingValue = "true")
+public class NearBalanceCache implements BalanceCache {
+
+    private final BoundedLocalCache<Long, CachedBalance> local;
+    private final Optional<RedisBalanceCache> remote;
+    private final BalanceInvalidationBus bus;
+
+    public NearBalanceCache(Optional<RedisBalanceCache> remote,
+                            BalanceInvalidationBus bus,
+                            MeterRegistry meterRegistry,
+                            @Value("${wallet.balance-cache.local.max-size:100000}") int maxSize,
+                            @Value("${wallet.balance-cache.local.ttl-ms:5000}") long ttlMs) {
+        this.local = new BoundedLocalCache<>(maxSize, ttlMs);
+        this.remote = remote;
+        this.bus = bus;
+        bus.subscribe(new BalanceInvalidationBus.Listener() {
+            @Override
+            public void onInvalidate(long walletId) {
+                local.remove(walletId);
+            }
+
+            @Override
+            public void onUpdate(long walletId, long balance, long version) {
+                putLocal(walletId, balance, version);
+            }
+        });
+
+        FunctionCounter.builder("wallet.balance.cache.local.requests", local, BoundedLocalCache::hitCount)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("wallet.balance.cache.local.requests", local, BoundedLocalCache::missCount)
+                .tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder("wallet.balance.cache.local.evictions", local, BoundedLocalCache::evictionCount)
+                .register(meterRegistry);
+        Gauge.builder("wallet.balance.cache.local.size", local, BoundedLocalCache::size)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Long get(Long walletId) {
+        if (walletId == null) return null;
+        CachedBalance cached = local.get(walletId);
+        if (cached != null) return cached.balance();
+        // Kept locally at its Redis version, so a later (newer) versioned put still replaces it
+        CachedBalance shared = remote.map(r -> r.getVersioned(walletId)).orElse(null);
+        if (shared == null) return null;
+        putLocal(walletId, shared.balance(), shared.version());
+        return shared.balance();
+    }
+
+    @Override
+    public void put(Long walletId, long balance, long version) {
+        if (walletId == null) return;
+        putLocal(walletId, balance, version);
+        remote.ifPresent(r -> r.put(walletId, balance, version));
+        bus.publishUpdate(walletId, balance, version);
+    }
+
+    private void putLocal(long walletId, long balance, long version) {
+        local.putIf(walletId, new CachedBalance(balance, version), (cur, next) -> next.version() > cur.version());
+    }
+
+    @Override
+    public void invalidate(Long walletId) {
+        if (walletId == null) return;
+        local.remove(walletId);
+        remote.ifPresent(r -> r.invalidate(walletId));
+        bus.publish(walletId);
+    }
+
+    @Override
+    public boolean isActive() {
+        return true;
+    }
+}
@@ -16,7 +16,7 @@ public class NoOpBalanceCache implements BalanceCache {
     }
 
     @Override
-    public void put(Long walletId, long balance) {
+    public void put(Long walletId, long balance, long version) {
         // no-op
     }
 
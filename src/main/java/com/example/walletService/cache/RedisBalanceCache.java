@@ -2,18 +2,32 @@ package com.example.walletService.cache;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.TimeUnit;
+import java.util.List;
 
 /**
  * Redis-backed balance cache. Used when wallet.idempotency.redis.enabled=true (same Redis as idempotency).
- * GET balance checks cache first; on miss loads from DB and caches. Writes invalidate the affected wallets.
+ * Values are "version:balance"; a put is a compare-and-set on the version (Lua script, one round trip),
+ * so concurrent writers converge on the newest committed balance.
  */
 @Component
 @ConditionalOnProperty(name = "wallet.idempotency.redis.enabled", havingValue = "true")
 public class RedisBalanceCache implements BalanceCache {
 
+    /** KEYS[1]=key, ARGV[1]=version, ARGV[2]=balance, ARGV[3]=ttl seconds. Returns 1 if stored. */
+    private static final RedisScript<Long> PUT_IF_NEWER = new DefaultRedisScript<>("""
+            local cur = redis.call('GET', KEYS[1])
+            if cur then
+              local v = tonumber(string.match(cur, '^(%d+):'))
+              if v and v >= tonumber(ARGV[1]) then return 0 end
+            end
+            redis.call('SET', KEYS[1], ARGV[1] .. ':' .. ARGV[2], 'EX', ARGV[3])
+            return 1
+            """, Long.class);
+
     private final StringRedisTemplate redis;
 
     public RedisBalanceCache(StringRedisTemplate redis) {
@@ -22,22 +36,29 @@ public class RedisBalanceCache implements BalanceCache {
 
     @Override
     public Long get(Long walletId) {
+        CachedBalance cached = getVersioned(walletId);
+        return cached != null ? cached.balance() : null;
+    }
+
+    /** The cached balance with its row version, or null on a miss (or an unparseable value). */
+    CachedBalance getVersioned(Long walletId) {
         if (walletId == null) return null;
-        String key = KEY_PREFIX + walletId;
-        String val = redis.opsForValue().get(key);
+        String val = redis.opsForValue().get(KEY_PREFIX + walletId);
         if (val == null) return null;
+        int sep = val.indexOf(':');
+        if (sep < 0) return null;
         try {
-            return Long.parseLong(val);
+            return new CachedBalance(Long.parseLong(val.substring(sep + 1)), Long.parseLong(val.substring(0, sep)));
         } catch (NumberFormatException e) {
             return null;
         }
     }
 
     @Override
-    public void put(Long walletId, long balance) {
+    public void put(Long walletId, long balance, long version) {
         if (walletId == null) return;
-        String key = KEY_PREFIX + walletId;
-        redis.opsForValue().set(key, String.valueOf(balance), TTL_SECONDS, TimeUnit.SECONDS);
+        redis.execute(PUT_IF_NEWER, List.of(KEY_PREFIX + walletId),
+                String.valueOf(version), String.valueOf(balance), String.valueOf(TTL_SECONDS));
     }
 
     @Override
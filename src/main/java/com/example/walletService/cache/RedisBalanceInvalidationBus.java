@@ -0,0 +1,70 @@
+package com.example.walletService.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cross-instance balance propagation over Redis pub/sub. Messages are "nodeId|walletId" (invalidate) or
+ * "nodeId|walletId|version|balance" (update); an instance ignores its own messages. Pub/sub is
+ * fire-and-forget, so the local cache TTL bounds staleness if a message is lost.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.idempotency.redis.enabled", havingValue = "true")
+@Slf4j
+public class RedisBalanceInvalidationBus implements BalanceInvalidationBus {
+
+    private final StringRedisTemplate redis;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisBalanceInvalidationBus(StringRedisTemplate redis, RedisMessageListenerContainer listenerContainer) {
+        this.redis = redis;
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+    }
+
+    @Override
+    public void publish(long walletId) {
+        redis.convertAndSend(CHANNEL, nodeId + "|" + walletId);
+    }
+
+    @Override
+    public void publishUpdate(long walletId, long balance, long version) {
+        redis.convertAndSend(CHANNEL, nodeId + "|" + walletId + "|" + version + "|" + balance);
+    }
+
+    @Override
+    public void subscribe(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\|");
+        if (parts[0].equals(nodeId)) return;
+        try {
+            if (parts.length == 2) {
+                long walletId = Long.parseLong(parts[1]);
+                listeners.forEach(l -> l.onInvalidate(walletId));
+            } else if (parts.length == 4) {
+                long walletId = Long.parseLong(parts[1]);
+                long version = Long.parseLong(parts[2]);
+                long balance = Long.parseLong(parts[3]);
+                listeners.forEach(l -> l.onUpdate(walletId, balance, version));
+            } else {
+                log.debug("Ignoring malformed balance message: {}", body);
+            }
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed balance message: {}", body);
+        }
+    }
+}
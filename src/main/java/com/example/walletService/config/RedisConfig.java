@@ -2,8 +2,13 @@ package com.example.walletService.config;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 
 /**
  * Enables Redis only when idempotency cache is configured, so the app starts without Redis by default.
@@ -12,4 +17,23 @@ import org.springframework.context.annotation.Import;
 @ConditionalOnProperty(name = "wallet.idempotency.redis.enabled", havingValue = "true")
 @Import(RedisAutoConfiguration.class)
 public class RedisConfig {
+
+    /** Pub/sub listener container (cross-instance cache invalidation). */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    /** Raw byte[] template for compact binary values (idempotency keys). */
+    @Bean
+    public RedisTemplate<byte[], byte[]> binaryRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<byte[], byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setEnableDefaultSerializer(false);
+        template.setKeySerializer(RedisSerializer.byteArray());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
 }
@@ -0,0 +1,12 @@
+package com.example.walletService.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables background jobs (e.g. balance reconciliation).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -1,21 +1,41 @@
 package com.example.walletService.controller;
 
 import com.example.walletService.cache.BalanceCache;
+import com.example.walletService.datasource.ConsistencyTokens;
+import com.example.walletService.datasource.ReadConsistency;
+import com.example.walletService.dto.BatchItemResult;
+import com.example.walletService.dto.BatchStreamError;
 import com.example.walletService.dto.TransactionHistoryItem;
+import com.example.walletService.dto.TransactionHistoryPage;
 import com.example.walletService.dto.TransactionRequest;
 import com.example.walletService.dto.TransactionResponse;
-import com.example.walletService.entity.Wallet;
+import com.example.walletService.dto.TransferStatusResponse;
 import com.example.walletService.exception.WalletException;
-import com.example.walletService.repository.LedgerRepository;
-import com.example.walletService.repository.WalletRepository;
+import com.example.walletService.service.BatchTransferService;
+import com.example.walletService.service.SystemWalletShards;
+import com.example.walletService.service.TransferJobService;
+import com.example.walletService.service.WalletBalance;
 import com.example.walletService.service.WalletService;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/wallet")
@@ -25,18 +45,26 @@ public class WalletController {
     private static final String IDEMPOTENCY_HEADER = "Idempotency-Key";
     private static final int IDEMPOTENCY_KEY_MIN = 1;
     private static final int IDEMPOTENCY_KEY_MAX = 200;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int HISTORY_DEFAULT_LIMIT = 50;
+    private static final int HISTORY_MAX_LIMIT = 500;
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CONSISTENCY_HEADER = "X-Consistency-Token";
 
     private final WalletService walletService;
-    private final LedgerRepository ledgerRepo;
-    private final WalletRepository walletRepo;
+    private final BatchTransferService batchTransfers;
     private final BalanceCache balanceCache;
+    private final SystemWalletShards systemWallets;
+    private final ObjectMapper objectMapper;
+    private final Optional<ConsistencyTokens> consistencyTokens;
+    private final Optional<TransferJobService> asyncTransfers;
 
     @PostMapping("/topup")
     public ResponseEntity<TransactionResponse> topup(
             @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKeyHeader,
             @Valid @RequestBody TransactionRequest req) {
         String key = resolveAndValidateIdempotencyKey(idempotencyKeyHeader, req.idempotencyKey());
-        return ResponseEntity.ok(new TransactionResponse(walletService.topup(req, key)));
+        return written(walletService.topup(req, key));
     }
 
     @PostMapping("/bonus")
@@ -44,7 +72,7 @@ public class WalletController {
             @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKeyHeader,
             @Valid @RequestBody TransactionRequest req) {
         String key = resolveAndValidateIdempotencyKey(idempotencyKeyHeader, req.idempotencyKey());
-        return ResponseEntity.ok(new TransactionResponse(walletService.bonus(req, key)));
+        return written(walletService.bonus(req, key));
     }
 
     @PostMapping("/spend")
@@ -52,14 +80,71 @@ public class WalletController {
             @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKeyHeader,
             @Valid @RequestBody TransactionRequest req) {
         String key = resolveAndValidateIdempotencyKey(idempotencyKeyHeader, req.idempotencyKey());
-        return ResponseEntity.ok(new TransactionResponse(walletService.spend(req, key)));
+        return written(walletService.spend(req, key));
+    }
+
+    /**
+     * Async topup: queued and answered with 202 and the transaction id (PENDING) before it is applied; poll
+     * {@link #transferStatus}. A repeated key returns the same transaction, with 200 once it is complete.
+     */
+    @PostMapping("/topup/async")
+    public ResponseEntity<TransferStatusResponse> topupAsync(
+            @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKeyHeader,
+            @Valid @RequestBody TransactionRequest req) {
+        String key = resolveAndValidateIdempotencyKey(idempotencyKeyHeader, req.idempotencyKey());
+        return submitted(asyncTransfers().topup(req, key));
+    }
+
+    /** Async bonus, same contract as {@link #topupAsync}. */
+    @PostMapping("/bonus/async")
+    public ResponseEntity<TransferStatusResponse> bonusAsync(
+            @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKeyHeader,
+            @Valid @RequestBody TransactionRequest req) {
+        String key = resolveAndValidateIdempotencyKey(idempotencyKeyHeader, req.idempotencyKey());
+        return submitted(asyncTransfers().bonus(req, key));
+    }
+
+    /** Async spend, same contract as {@link #topupAsync}; insufficient funds shows up as FAILED. */
+    @PostMapping("/spend/async")
+    public ResponseEntity<TransferStatusResponse> spendAsync(
+            @RequestHeader(value = IDEMPOTENCY_HEADER, required = false) String idempotencyKeyHeader,
+            @Valid @RequestBody TransactionRequest req) {
+        String key = resolveAndValidateIdempotencyKey(idempotencyKeyHeader, req.idempotencyKey());
+        return submitted(asyncTransfers().spend(req, key));
+    }
+
+    /**
+     * State of a transaction: PENDING while its async job is queued, then SUCCESS or FAILED (with the reason).
+     */
+    @GetMapping("/transactions/{transactionId}/status")
+    public ResponseEntity<TransferStatusResponse> transferStatus(@PathVariable Long transactionId) {
+        return ResponseEntity.ok(asyncTransfers().status(transactionId));
+    }
+
+    /**
+     * Bulk topup: body is a JSON array of {userId, amount, idempotencyKey}, read as a stream; one NDJSON
+     * {@link BatchItemResult} line per item. A body that is not a JSON array is rejected with 400; a batch that
+     * stops part-way ends with one {@link BatchStreamError} line. Resubmitting the same batch is safe (see
+     * {@link BatchTransferService}).
+     */
+    @PostMapping(value = "/topup/batch", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> topupBatch(InputStream body) {
+        JsonParser items = batchTransfers.open(body);
+        return ndjsonResponse(out -> batchTransfers.topup(items, ndjsonSink(out), ndjsonSink(out)));
+    }
+
+    /** Bulk bonus, same contract as {@link #topupBatch}. */
+    @PostMapping(value = "/bonus/batch", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> bonusBatch(InputStream body) {
+        JsonParser items = batchTransfers.open(body);
+        return ndjsonResponse(out -> batchTransfers.bonus(items, ndjsonSink(out), ndjsonSink(out)));
     }
 
     /**
      * Validate idempotency key from header or body (header takes precedence), then allow processing.
-     * Ensures key is present and 1–200 chars before any business logic runs.
+     * Ensures key is present and 1–200 chars before any business logic runs. Package-private for the JMH benchmark.
      */
-    private String resolveAndValidateIdempotencyKey(String fromHeader, String fromBody) {
+    static String resolveAndValidateIdempotencyKey(String fromHeader, String fromBody) {
         String key = (fromHeader != null && !fromHeader.isBlank())
                 ? fromHeader.trim()
                 : (fromBody != null ? fromBody.trim() : null);
@@ -72,26 +157,127 @@ public class WalletController {
         return key;
     }
 
+    /**
+     * Resolved wallet id (cached) first, so a balance cache hit needs no DB access and a miss reads the
+     * wallet row by primary key (on a replica when enabled; pass the X-Consistency-Token of an earlier write
+     * to be sure to see it).
+     */
     @GetMapping("/{userId}/balance")
-    public ResponseEntity<Map<String, Long>> balance(@PathVariable Long userId) {
-        Wallet wallet = walletRepo.findByUserId(userId)
-                .orElseThrow(() -> new WalletException("User wallet not found", 404));
-        Long balance;
+    public ResponseEntity<Map<String, Long>> balance(
+            @PathVariable Long userId,
+            @RequestHeader(value = CONSISTENCY_HEADER, required = false) String consistencyToken) {
+        Long walletId = walletService.getWalletId(userId);
         if (balanceCache.isActive()) {
-            Long cached = balanceCache.get(wallet.getId());
+            Long cached = balanceCache.get(walletId);
             if (cached != null) {
                 return ResponseEntity.ok(Map.of("userId", userId, "balance", cached));
             }
-            balance = ledgerRepo.getBalance(wallet.getId());
-            balanceCache.put(wallet.getId(), balance);
-        } else {
-            balance = ledgerRepo.getBalance(wallet.getId());
         }
-        return ResponseEntity.ok(Map.of("userId", userId, "balance", balance));
+        WalletBalance wallet = readAtLeast(consistencyToken, () -> walletService.getBalance(walletId));
+        if (balanceCache.isActive()) {
+            balanceCache.put(walletId, wallet.balance(), wallet.version());
+        }
+        return ResponseEntity.ok(Map.of("userId", userId, "balance", wallet.balance()));
     }
 
+    /**
+     * Balance of a system wallet (Treasury=1, Bonus Pool=2, Revenue=3), aggregated across its shards.
+     */
+    @GetMapping("/system/{walletId}/balance")
+    public ResponseEntity<Map<String, Long>> systemBalance(@PathVariable Long walletId) {
+        if (!systemWallets.isRoot(walletId)) {
+            throw new WalletException("System wallet not found", 404);
+        }
+        Long balance = systemWallets.aggregatedBalance(walletId);
+        long shards = systemWallets.shardsOf(walletId).size();
+        return ResponseEntity.ok(Map.of("walletId", walletId, "balance", balance, "shards", shards));
+    }
+
+    /**
+     * One page of history, newest first. The next page's cursor is returned in the X-Next-Cursor header
+     * (absent on the last page).
+     */
     @GetMapping("/{userId}/transactions")
-    public ResponseEntity<List<TransactionHistoryItem>> transactionHistory(@PathVariable Long userId) {
-        return ResponseEntity.ok(walletService.getTransactionHistory(userId));
+    public ResponseEntity<List<TransactionHistoryItem>> transactionHistory(
+            @PathVariable Long userId,
+            @RequestParam(defaultValue = "" + HISTORY_DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = CONSISTENCY_HEADER, required = false) String consistencyToken) {
+        if (limit < 1 || limit > HISTORY_MAX_LIMIT) {
+            throw new WalletException("limit must be 1–" + HISTORY_MAX_LIMIT, 400);
+        }
+        TransactionHistoryPage page = readAtLeast(consistencyToken,
+                () -> walletService.getTransactionHistory(userId, limit, cursor));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+
+    /**
+     * Full history as NDJSON (one TransactionHistoryItem per line) for exports, streamed from a DB cursor.
+     */
+    @GetMapping(value = "/{userId}/transactions/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportTransactionHistory(
+            @PathVariable Long userId,
+            @RequestHeader(value = CONSISTENCY_HEADER, required = false) String consistencyToken) {
+        Long walletId = walletService.getWalletId(userId);
+        // Streamed on another thread: the consistency requirement is applied there
+        return ndjsonResponse(out -> readAtLeast(consistencyToken, () -> {
+            walletService.streamTransactionHistory(walletId, ndjsonSink(out));
+            return null;
+        }));
+    }
+
+    /**
+     * Response of a committed write. With read replicas enabled it carries the primary's WAL position as
+     * X-Consistency-Token; reads that send it back see this write.
+     */
+    private ResponseEntity<TransactionResponse> written(Long transactionId) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        consistencyTokens.ifPresent(t -> response.header(CONSISTENCY_HEADER, t.current()));
+        return response.body(new TransactionResponse(transactionId));
+    }
+
+    /** 202 with a Location to poll while the transfer is queued; 200 for a key whose transfer is complete. */
+    private ResponseEntity<TransferStatusResponse> submitted(TransferStatusResponse status) {
+        if (!"PENDING".equals(status.status())) {
+            return ResponseEntity.ok(status);
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/wallet/transactions/" + status.transactionId() + "/status"))
+                .body(status);
+    }
+
+    private TransferJobService asyncTransfers() {
+        return asyncTransfers.orElseThrow(() -> new WalletException("Async transfers are not enabled", 404));
+    }
+
+    private <T> T readAtLeast(String consistencyToken, Supplier<T> read) {
+        try {
+            return ReadConsistency.atLeast(consistencyToken, read);
+        } catch (IllegalArgumentException e) {
+            throw new WalletException("Invalid " + CONSISTENCY_HEADER, 400);
+        }
+    }
+
+    /**
+     * Streamed on an MVC async thread, so the response is bounded by spring.mvc.async.request-timeout (set
+     * for long batches and exports; the container default would cut them off after 30s).
+     */
+    private ResponseEntity<StreamingResponseBody> ndjsonResponse(StreamingResponseBody body) {
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    private <T> Consumer<T> ndjsonSink(OutputStream out) {
+        return item -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(item));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
     }
 }
@@ -0,0 +1,20 @@
+package com.example.walletService.datasource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Issues read-your-writes tokens: the primary's current WAL position, read after a write has committed.
+ * A replica that has replayed up to it sees that write (see {@link ReadConsistency}).
+ */
+public class ConsistencyTokens {
+
+    private final JdbcTemplate jdbc;
+
+    ConsistencyTokens(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public String current() {
+        return jdbc.queryForObject("SELECT pg_current_wal_lsn()::text", String.class);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.walletService.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Read-your-writes for replica reads. Writes hand out the primary's WAL position (LSN) as a token; a read
+ * that carries it only goes to a replica that has replayed at least that far, otherwise to the primary.
+ * The requirement is held in a thread-local for the duration of the read.
+ */
+public final class ReadConsistency {
+
+    private static final ThreadLocal<Long> MIN_LSN = new ThreadLocal<>();
+
+    private ReadConsistency() {}
+
+    /**
+     * Runs the read with the token's freshness requirement; a null or blank token means any replica within
+     * the lag limit will do.
+     *
+     * @throws IllegalArgumentException if the token is not an LSN ("X/Y", hex)
+     */
+    public static <T> T atLeast(String token, Supplier<T> read) {
+        if (token == null || token.isBlank()) return read.get();
+        Long previous = MIN_LSN.get();
+        MIN_LSN.set(parseLsn(token.trim()));
+        try {
+            return read.get();
+        } finally {
+            if (previous == null) MIN_LSN.remove();
+            else MIN_LSN.set(previous);
+        }
+    }
+
+    /** Minimum LSN the current read needs, or null. */
+    static Long requiredLsn() {
+        return MIN_LSN.get();
+    }
+
+    /** Postgres pg_lsn text ("16/B374D848") as a comparable 64-bit position. */
+    static long parseLsn(String lsn) {
+        int slash = lsn.indexOf('/');
+        if (slash <= 0 || slash == lsn.length() - 1) throw new IllegalArgumentException("Not an LSN: " + lsn);
+        return (Long.parseLong(lsn.substring(0, slash), 16) << 32) | Long.parseLong(lsn.substring(slash + 1), 16);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.walletService.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * One read replica: its pool and the replication state last seen by {@link ReplicaLagMonitor}.
+ * A replica that has not been checked yet, or whose last check failed, is not used.
+ */
+final class Replica {
+
+    private final String name;
+    private final HikariDataSource dataSource;
+    private volatile boolean reachable;
+    private volatile long lagMs = -1; // unknown until the first check
+    private volatile long replayLsn;
+
+    Replica(String name, HikariDataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+    }
+
+    String name() {
+        return name;
+    }
+
+    HikariDataSource dataSource() {
+        return dataSource;
+    }
+
+    long lagMs() {
+        return lagMs;
+    }
+
+    void update(long lagMs, long replayLsn) {
+        this.lagMs = lagMs;
+        this.replayLsn = replayLsn;
+        this.reachable = true;
+    }
+
+    void markDown() {
+        reachable = false;
+    }
+
+    /** Within the lag limit and, if the read carries a token, replayed at least up to it. */
+    boolean canServe(long maxLagMs, Long requiredLsn) {
+        return reachable && lagMs <= maxLagMs && (requiredLsn == null || Long.compareUnsigned(replayLsn, requiredLsn) >= 0);
+    }
+}
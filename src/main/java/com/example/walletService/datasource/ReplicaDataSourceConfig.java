@@ -0,0 +1,81 @@
+package com.example.walletService.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opt-in read replicas (wallet.datasource.replicas.enabled=true). The application DataSource becomes a
+ * LazyConnectionDataSourceProxy over the primary pool: the physical connection is fetched at the first
+ * statement, after the transaction has marked it read-only, so @Transactional(readOnly = true) work (balance,
+ * history, export) goes to a replica chosen by {@link ReplicaRoutingDataSource} and everything else, including
+ * Flyway and non-transactional reads, stays on the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "wallet.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    /** The primary pool, configured by the usual spring.datasource.* / spring.datasource.hikari.* properties. */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        ds.setPoolName("primary");
+        return ds;
+    }
+
+    @Bean
+    ReplicaPool replicaPool(@Value("${wallet.datasource.replicas.urls}") List<String> urls,
+                                  @Value("${wallet.datasource.replicas.username:${spring.datasource.username}}") String username,
+                                  @Value("${wallet.datasource.replicas.password:${spring.datasource.password}}") String password,
+                                  @Value("${wallet.datasource.replicas.pool-size:10}") int poolSize) {
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("wallet.datasource.replicas.urls must list at least one replica");
+        }
+        List<Replica> replicas = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource ds = new HikariDataSource();
+            ds.setPoolName("replica-" + i);
+            ds.setJdbcUrl(urls.get(i).trim());
+            ds.setUsername(username);
+            ds.setPassword(password);
+            ds.setMaximumPoolSize(poolSize);
+            ds.setReadOnly(true);
+            replicas.add(new Replica("replica-" + i, ds));
+        }
+        return new ReplicaPool(replicas);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaPool replicaPool,
+                                 @Value("${wallet.datasource.replicas.max-lag-ms:500}") long maxLagMs,
+                                 MeterRegistry meterRegistry) {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy(primaryDataSource);
+        proxy.setReadOnlyDataSource(new ReplicaRoutingDataSource(primaryDataSource, replicaPool.replicas(), maxLagMs, meterRegistry));
+        return proxy;
+    }
+
+    @Bean
+    ReplicaLagMonitor replicaLagMonitor(HikariDataSource primaryDataSource, ReplicaPool replicaPool,
+                                        MeterRegistry meterRegistry) {
+        return new ReplicaLagMonitor(primaryDataSource, replicaPool.replicas(), meterRegistry);
+    }
+
+    @Bean
+    public ConsistencyTokens consistencyTokens(JdbcTemplate jdbcTemplate) {
+        return new ConsistencyTokens(jdbcTemplate);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.walletService.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Polls each replica for its replication state. A replica in recovery whose WAL receiver is not streaming
+ * from the primary is taken out of rotation: with the receiver gone it has nothing left to replay and
+ * would otherwise look current while serving ever older data. Lag is 0 once the replica has replayed up to
+ * the primary's WAL position read at the start of the check, otherwise the age of the last replayed
+ * transaction (an upper bound after an idle period). A server that is not in recovery (e.g. the primary
+ * itself configured as a "replica" in dev) reports lag 0 and its current LSN. A failed check takes the
+ * replica out of rotation until the next successful one.
+ * Metrics: wallet.db.replica.lag.ms (replica).
+ */
+@Slf4j
+class ReplicaLagMonitor {
+
+    private static final String PRIMARY_LSN_SQL = "SELECT pg_current_wal_lsn()::text";
+
+    private static final String REPLICA_SQL = """
+            SELECT pg_is_in_recovery() AS in_recovery,
+                   EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') AS streaming,
+                   COALESCE(EXTRACT(EPOCH FROM clock_timestamp() - pg_last_xact_replay_timestamp()) * 1000, 0)::bigint
+                       AS replay_age_ms,
+                   (CASE WHEN pg_is_in_recovery() THEN pg_last_wal_replay_lsn() ELSE pg_current_wal_lsn() END)::text AS lsn
+            """;
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+
+    ReplicaLagMonitor(DataSource primary, List<Replica> replicas, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas;
+        for (Replica r : replicas) {
+            Gauge.builder("wallet.db.replica.lag.ms", r, Replica::lagMs).tag("replica", r.name()).register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.datasource.replicas.lag-check-interval-ms:500}")
+    void check() {
+        Long primaryLsn = primaryLsn();
+        for (Replica r : replicas) {
+            try (Connection c = r.dataSource().getConnection();
+                 Statement st = c.createStatement()) {
+                st.setQueryTimeout(2);
+                try (ResultSet rs = st.executeQuery(REPLICA_SQL)) {
+                    rs.next();
+                    long lsn = ReadConsistency.parseLsn(rs.getString("lsn"));
+                    if (!rs.getBoolean("in_recovery")) {
+                        r.update(0, lsn);
+                    } else if (!rs.getBoolean("streaming")) {
+                        r.markDown();
+                        log.warn("Replica {} is not streaming from the primary", r.name());
+                    } else {
+                        boolean caughtUp = primaryLsn != null && Long.compareUnsigned(lsn, primaryLsn) >= 0;
+                        r.update(caughtUp ? 0 : rs.getLong("replay_age_ms"), lsn);
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                r.markDown();
+                log.warn("Replica {} lag check failed: {}", r.name(), e.getMessage());
+            }
+        }
+    }
+
+    /** The primary's current WAL position, or null if it cannot be read (lag is then the replay age). */
+    private Long primaryLsn() {
+        try (Connection c = primary.getConnection();
+             Statement st = c.createStatement()) {
+            st.setQueryTimeout(2);
+            try (ResultSet rs = st.executeQuery(PRIMARY_LSN_SQL)) {
+                rs.next();
+                return ReadConsistency.parseLsn(rs.getString(1));
+            }
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Primary WAL position check failed: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.walletService.datasource;
+
+import java.util.List;
+
+/** The configured replicas; closes their connection pools on shutdown. */
+final class ReplicaPool implements AutoCloseable {
+
+    private final List<Replica> replicas;
+
+    ReplicaPool(List<Replica> replicas) {
+        this.replicas = List.copyOf(replicas);
+    }
+
+    List<Replica> replicas() {
+        return replicas;
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(r -> r.dataSource().close());
+    }
+}
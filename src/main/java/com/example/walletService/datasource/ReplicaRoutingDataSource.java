@@ -0,0 +1,77 @@
+package com.example.walletService.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connection source for read-only transactions (wired as the read-only target of a
+ * LazyConnectionDataSourceProxy, see {@link ReplicaDataSourceConfig}). Picks the next replica round-robin
+ * that is within the lag limit and satisfies the caller's read-your-writes token
+ * ({@link ReadConsistency}); falls back to the primary when none qualifies or the replica cannot be reached.
+ * Metrics: wallet.db.reads (target=replica|primary, reason=ok|stale|error).
+ */
+@Slf4j
+class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMs;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Counter replicaReads;
+    private final Counter primaryStale;
+    private final Counter primaryError;
+
+    ReplicaRoutingDataSource(DataSource primary, List<Replica> replicas, long maxLagMs, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.maxLagMs = maxLagMs;
+        this.replicaReads = Counter.builder("wallet.db.reads").tag("target", "replica").tag("reason", "ok").register(meterRegistry);
+        this.primaryStale = Counter.builder("wallet.db.reads").tag("target", "primary").tag("reason", "stale").register(meterRegistry);
+        this.primaryError = Counter.builder("wallet.db.reads").tag("target", "primary").tag("reason", "error").register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = pick();
+        if (replica == null) {
+            // No replica fresh enough (lag, or behind the caller's own write): read from the primary
+            primaryStale.increment();
+            return primary.getConnection();
+        }
+        try {
+            Connection c = replica.dataSource().getConnection();
+            replicaReads.increment();
+            return c;
+        } catch (SQLException e) {
+            // Taken out of rotation until the lag monitor reaches it again
+            replica.markDown();
+            log.warn("Replica {} unavailable, reading from primary: {}", replica.name(), e.getMessage());
+            primaryError.increment();
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    private Replica pick() {
+        Long requiredLsn = ReadConsistency.requiredLsn();
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica r = replicas.get((start + i) % replicas.size());
+            if (r.canServe(maxLagMs, requiredLsn)) return r;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.walletService.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one batch item, streamed back as one NDJSON line.
+ *
+ * @param index  position of the item in the request
+ * @param status APPLIED, DUPLICATE (key already committed; transactionId is the original), COMPLETED
+ *               (applied or duplicate, not known which: item replayed singly after its chunk failed), PENDING
+ *               (key taken by an async submission still queued; transactionId is that transfer) or FAILED
+ *               (including a key whose async transfer failed, with that transfer's error)
+ * @param error  reason when FAILED, with the HTTP status the single-item endpoint would have returned
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchItemResult(
+        int index,
+        Long userId,
+        String idempotencyKey,
+        String status,
+        Long transactionId,
+        Integer errorStatus,
+        String error
+) {
+
+    public static BatchItemResult applied(int index, BatchTransferItem item, Long txId) {
+        return new BatchItemResult(index, item.userId(), item.idempotencyKey(), "APPLIED", txId, null, null);
+    }
+
+    public static BatchItemResult duplicate(int index, BatchTransferItem item, Long txId) {
+        return new BatchItemResult(index, item.userId(), item.idempotencyKey(), "DUPLICATE", txId, null, null);
+    }
+
+    public static BatchItemResult completed(int index, BatchTransferItem item, Long txId) {
+        return new BatchItemResult(index, item.userId(), item.idempotencyKey(), "COMPLETED", txId, null, null);
+    }
+
+    public static BatchItemResult pending(int index, BatchTransferItem item, Long txId) {
+        return new BatchItemResult(index, item.userId(), item.idempotencyKey(), "PENDING", txId, null, null);
+    }
+
+    public static BatchItemResult failed(int index, BatchTransferItem item, int errorStatus, String error) {
+        return new BatchItemResult(index, item.userId(), item.idempotencyKey(), "FAILED", null, errorStatus, error);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.walletService.dto;
+
+/**
+ * Last NDJSON line of a batch that stopped part-way (malformed item, too many items, DB unavailable, ...).
+ * Results already streamed stand: their chunks are committed, so resubmitting the batch is safe.
+ *
+ * @param index       position of the item at which processing stopped
+ * @param errorStatus the HTTP status the request would have failed with, had nothing been streamed yet
+ */
+public record BatchStreamError(int index, int errorStatus, String error) {
+}
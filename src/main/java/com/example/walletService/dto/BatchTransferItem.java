@@ -0,0 +1,11 @@
+package com.example.walletService.dto;
+
+/**
+ * One line of a batch topup/bonus request. Validated per item by the batch service, so one bad line
+ * fails only itself.
+ */
+public record BatchTransferItem(
+        Long userId,
+        Long amount,
+        String idempotencyKey
+) {}
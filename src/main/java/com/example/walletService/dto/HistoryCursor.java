@@ -0,0 +1,34 @@
+package com.example.walletService.dto;
+
+import com.example.walletService.exception.WalletException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Keyset position in a wallet's history: (createdAt, transactionId) of the last item returned.
+ * A wallet has at most one ledger entry per transaction, so the pair is unique per wallet.
+ * Clients treat the encoded form as opaque.
+ */
+public record HistoryCursor(LocalDateTime createdAt, Long transactionId) {
+
+    public String encode() {
+        String raw = createdAt + "|" + transactionId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HistoryCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int sep = raw.indexOf('|');
+            return new HistoryCursor(LocalDateTime.parse(raw.substring(0, sep)), Long.parseLong(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new WalletException("Invalid cursor", 400);
+        }
+    }
+
+    public static HistoryCursor after(TransactionHistoryItem item) {
+        return new HistoryCursor(item.createdAt(), item.transactionId());
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.walletService.dto;
+
+import java.util.List;
+
+/**
+ * One page of transaction history; nextCursor is null on the last page.
+ */
+public record TransactionHistoryPage(
+        List<TransactionHistoryItem> items,
+        String nextCursor
+) {}
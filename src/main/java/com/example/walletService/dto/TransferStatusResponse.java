@@ -0,0 +1,17 @@
+package com.example.walletService.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * State of an async transfer.
+ *
+ * @param status PENDING (queued), SUCCESS or FAILED
+ * @param error  reason when FAILED
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TransferStatusResponse(Long transactionId, String status, String error) {
+
+    public static TransferStatusResponse pending(Long transactionId) {
+        return new TransferStatusResponse(transactionId, "PENDING", null);
+    }
+}
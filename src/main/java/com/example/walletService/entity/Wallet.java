@@ -2,8 +2,10 @@ package com.example.walletService.entity;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.*;
 
 import java.time.LocalDateTime;
@@ -18,13 +20,24 @@ import java.time.LocalDateTime;
 public class Wallet {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
     private Long userId;
 
     private Long assetTypeId;
 
+    // running balance, kept in sync with SUM(ledger_entries.amount) for this wallet
+    private Long balance;
+
+    // bumped with every balance change; caches use it to reject stale balances
+    @Version
+    private Long version;
+
+    // system wallet shards: root system wallet id and shard number (root itself is shard 0)
+    private Long parentWalletId;
+    private Integer shardNo;
+
     private LocalDateTime createdAt;
 
 
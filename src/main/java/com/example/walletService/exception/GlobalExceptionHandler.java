@@ -1,10 +1,13 @@
 package com.example.walletService.exception;
 
+import com.example.walletService.dto.TransferStatusResponse;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import java.net.URI;
 import java.util.Map;
 import java.util.stream.Collectors;
 
@@ -16,6 +19,14 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(e.getStatusCode()).body(Map.of("error", e.getMessage()));
     }
 
+    /** A retried key whose async transfer is still queued: same answer as the async submission. */
+    @ExceptionHandler(TransferPendingException.class)
+    public ResponseEntity<TransferStatusResponse> handlePending(TransferPendingException e) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .location(URI.create("/wallet/transactions/" + e.getTransactionId() + "/status"))
+                .body(TransferStatusResponse.pending(e.getTransactionId()));
+    }
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<Map<String, String>> handleValidation(MethodArgumentNotValidException e) {
         String message = e.getBindingResult().getFieldErrors().stream()
@@ -0,0 +1,21 @@
+package com.example.walletService.exception;
+
+/**
+ * The idempotency key belongs to an async transfer that is still queued: answered with 202 and the
+ * transaction id to poll, not as a completed transfer.
+ */
+public class TransferPendingException extends WalletException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long transactionId;
+
+    public TransferPendingException(long transactionId) {
+        super("Transfer " + transactionId + " is still pending", 202);
+        this.transactionId = transactionId;
+    }
+
+    public long getTransactionId() {
+        return transactionId;
+    }
+}
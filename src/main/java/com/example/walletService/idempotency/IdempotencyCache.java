@@ -2,47 +2,51 @@ package com.example.walletService.idempotency;
 
 /**
  * Cache for idempotency keys to support fast lookup and parallel-safe claiming
- * in distributed setups. Check cache first (faster than DB); on miss, claim then
- * process and store result.
+ * in distributed setups. One {@link #claimOrGet} call either returns the completed
+ * result or claims the key; the claimer then processes and completes (or releases) it.
+ * Claims carry a fencing token so a claimer whose claim expired cannot overwrite the
+ * state written by a newer claimer.
  */
 public interface IdempotencyCache {
 
     String PREFIX = "idempotency:";
-    String CLAIM_VALUE = "processing";
     int CLAIM_TTL_SECONDS = 120;
     int SUCCESS_TTL_SECONDS = 86400; // 24 hours
 
     /**
-     * Returns the stored transaction id for this key if the operation was already completed.
+     * Atomically returns the stored result for this key, or claims it if the key is free.
      *
      * @param key idempotency key
-     * @return transaction id, or null if not found / not yet completed
+     * @return COMPLETED(txId), IN_PROGRESS (claimed by another caller) or CLAIMED(fencingToken)
      */
-    Long get(String key);
+    IdempotencyClaim claimOrGet(String key);
 
     /**
-     * Tries to claim the key for processing (e.g. Redis SET NX). Only one caller should get true.
-     *
-     * @param key idempotency key
-     * @return true if this caller claimed the key and should process; false if another has claimed or already completed
+     * Like {@link #claimOrGet}, but if another caller holds the key, also records that someone waits for
+     * it, so that caller's {@link #complete} or {@link #release} reports the claim end must be announced.
      */
-    boolean tryClaim(String key);
+    IdempotencyClaim claimOrWatch(String key);
 
     /**
-     * Stores the transaction id after successful processing.
+     * Stores the transaction id after successful processing, unless another caller's claim or a
+     * result has replaced this caller's claim in the meantime.
      *
-     * @param key   idempotency key
-     * @param txId  transaction id
-     * @param ttlSeconds TTL for the key (e.g. 24h)
+     * @param key          idempotency key
+     * @param fencingToken token returned by {@link #claimOrGet}
+     * @param txId         transaction id
+     * @return true if a {@link #claimOrWatch} caller waits on this claim
      */
-    void put(String key, long txId, int ttlSeconds);
+    boolean complete(String key, long fencingToken, long txId);
 
     /**
-     * Removes the key so the client can retry (e.g. after processing failed).
+     * Removes this caller's claim so the client can retry (e.g. after processing failed).
+     * No-op if the claim is no longer held by this caller.
      *
-     * @param key idempotency key
+     * @param key          idempotency key
+     * @param fencingToken token returned by {@link #claimOrGet}
+     * @return true if a {@link #claimOrWatch} caller waits on this claim
      */
-    void delete(String key);
+    boolean release(String key, long fencingToken);
 
     /**
      * Whether this implementation actually uses a backing store (e.g. Redis).
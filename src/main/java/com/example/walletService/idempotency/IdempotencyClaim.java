@@ -0,0 +1,32 @@
+package com.example.walletService.idempotency;
+
+/**
+ * Result of {@link IdempotencyCache#claimOrGet(String)}.
+ *
+ * @param status        what the cache held for the key
+ * @param fencingToken  token of this caller's claim (CLAIMED only); must be passed to complete/release
+ * @param transactionId transaction id of the completed operation (COMPLETED only)
+ */
+public record IdempotencyClaim(Status status, long fencingToken, Long transactionId) {
+
+    public enum Status {
+        /** This caller now owns the key and must process, then complete or release it. */
+        CLAIMED,
+        /** Another caller owns the key and has not finished yet. */
+        IN_PROGRESS,
+        /** The operation was already completed. */
+        COMPLETED
+    }
+
+    public static IdempotencyClaim claimed(long fencingToken) {
+        return new IdempotencyClaim(Status.CLAIMED, fencingToken, null);
+    }
+
+    public static IdempotencyClaim inProgress() {
+        return new IdempotencyClaim(Status.IN_PROGRESS, 0, null);
+    }
+
+    public static IdempotencyClaim completed(long transactionId) {
+        return new IdempotencyClaim(Status.COMPLETED, 0, transactionId);
+    }
+}
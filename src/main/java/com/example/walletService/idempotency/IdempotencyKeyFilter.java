@@ -0,0 +1,112 @@
+package com.example.walletService.idempotency;
+
+import com.example.walletService.repository.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Per-node "definitely new" filter for scoped idempotency keys ("scope:key"). If a key was never seen by
+ * this node, the transfer skips the SELECT on idempotency_keys and inserts its key directly; a duplicate it
+ * did not see (other node, older than the filter, not yet loaded) is still rejected by the idempotency_keys
+ * primary key (scope_id, key_hash) and resolved by the DataIntegrityViolationException fallback in
+ * {@code WalletService}.
+ * <p>
+ * Opt-in ({@code wallet.idempotency.filter.enabled=true}). It pays off on a single node or with requests
+ * routed to nodes by user: with several nodes behind a plain load balancer, a retry usually lands on a
+ * node that never saw its key, and every such duplicate costs a failed insert and a rollback instead of a
+ * SELECT.
+ * <p>
+ * Rebuilt at startup from keys of the last {@code rebuild-hours}. Metrics: wallet.idempotency.filter.checks
+ * (result=new|maybe), wallet.idempotency.filter.false-positives (maybe, but the SELECT found nothing),
+ * wallet.idempotency.filter.expected-fpp and wallet.idempotency.filter.size. Keys are added when checked,
+ * not when committed, so false-positives also counts keys whose earlier attempt rolled back (lock retries,
+ * insufficient funds) or was purged; compare it with expected-fpp only on a workload without those.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.idempotency.filter.enabled", havingValue = "true")
+@Slf4j
+public class IdempotencyKeyFilter {
+
+    private final RotatingBloomFilter filter;
+    private final IdempotencyKeyRepository idempotencyKeys;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter checkedNew;
+    private final Counter checkedMaybe;
+    private final Counter falsePositives;
+
+    @Value("${wallet.idempotency.filter.rebuild-hours:24}")
+    private int rebuildHours;
+
+    public IdempotencyKeyFilter(IdempotencyKeyRepository idempotencyKeys,
+                                TransactionTemplate transactionTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${wallet.idempotency.filter.capacity:1000000}") int capacity,
+                                @Value("${wallet.idempotency.filter.fpp:0.01}") double fpp) {
+        this.filter = new RotatingBloomFilter(capacity, fpp);
+        this.idempotencyKeys = idempotencyKeys;
+        this.transactionTemplate = transactionTemplate;
+        this.checkedNew = Counter.builder("wallet.idempotency.filter.checks").tag("result", "new").register(meterRegistry);
+        this.checkedMaybe = Counter.builder("wallet.idempotency.filter.checks").tag("result", "maybe").register(meterRegistry);
+        this.falsePositives = Counter.builder("wallet.idempotency.filter.false-positives").register(meterRegistry);
+        Gauge.builder("wallet.idempotency.filter.expected-fpp", filter, RotatingBloomFilter::expectedFpp)
+                .register(meterRegistry);
+        Gauge.builder("wallet.idempotency.filter.size", filter, RotatingBloomFilter::size)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        LocalDateTime since = LocalDateTime.now().minusHours(rebuildHours);
+        try {
+            Long loaded = transactionTemplate.execute(s -> {
+                try (Stream<IdempotencyKeyRepository.Key> keys = idempotencyKeys.streamKeysSince(since)) {
+                    long[] n = {0};
+                    keys.forEach(k -> {
+                        filter.put(k.scoped());
+                        n[0]++;
+                    });
+                    return n[0];
+                }
+            });
+            log.info("Idempotency key filter loaded {} key(s) since {}", loaded, since);
+        } catch (Exception e) {
+            // Without the history the filter only reports more keys as new; the idempotency_keys primary key still holds
+            log.error("Idempotency key filter rebuild failed", e);
+        }
+    }
+
+    /**
+     * Records the key as seen and reports whether it may have been seen before.
+     *
+     * @return false if the key is definitely new to this node (the idempotency SELECT can be skipped)
+     */
+    public boolean mightExist(String key) {
+        boolean maybe = filter.mightContain(key);
+        if (maybe) {
+            checkedMaybe.increment();
+        } else {
+            checkedNew.increment();
+            filter.put(key);
+        }
+        return maybe;
+    }
+
+    /**
+     * Reports that {@link #mightExist} said "maybe" but the key was not in the database: a Bloom filter
+     * false positive, or a key whose earlier attempt did not commit or was purged.
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+}
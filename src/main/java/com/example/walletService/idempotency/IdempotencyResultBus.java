@@ -0,0 +1,24 @@
+package com.example.walletService.idempotency;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Tells requests waiting on another instance's claim that the claim ended: completed with a transaction
+ * id, or released (failed) so a waiter may claim the key itself.
+ */
+public interface IdempotencyResultBus {
+
+    String CHANNEL = "idempotency:done";
+
+    /**
+     * Publishes the end of a claim to other instances.
+     *
+     * @param txId transaction id, or null if the claim was released without a result
+     */
+    void publish(String key, Long txId);
+
+    /**
+     * Registers the handler for claim endings published by other instances.
+     */
+    void subscribe(BiConsumer<String, Long> handler);
+}
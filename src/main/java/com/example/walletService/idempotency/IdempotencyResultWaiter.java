@@ -0,0 +1,159 @@
+package com.example.walletService.idempotency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Lets a duplicate request wait for the result of the request that owns its idempotency key, instead of
+ * failing with 409.
+ * <ul>
+ *   <li>Same node: the first request for a key registers a future; later ones coalesce on it and never
+ *       reach Redis or the DB.</li>
+ *   <li>Other node: a request that finds the key IN_PROGRESS waits to be woken through the
+ *       {@link IdempotencyResultBus}, then re-checks the key (bounded by the same timeout).</li>
+ * </ul>
+ * Wait times are exported as wallet.idempotency.wait (tags scope=local|remote, outcome), coalesced
+ * requests as wallet.idempotency.coalesced.
+ */
+@Component
+public class IdempotencyResultWaiter {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Long>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Long>> remoteWaits = new ConcurrentHashMap<>();
+    private final IdempotencyResultBus bus;
+    private final MeterRegistry meterRegistry;
+    private final Counter coalesced;
+
+    @Value("${wallet.idempotency.wait.enabled:true}")
+    private boolean enabled;
+    @Value("${wallet.idempotency.wait.timeout-ms:3000}")
+    private long timeoutMs;
+
+    public IdempotencyResultWaiter(IdempotencyResultBus bus, MeterRegistry meterRegistry) {
+        this.bus = bus;
+        this.meterRegistry = meterRegistry;
+        this.coalesced = Counter.builder("wallet.idempotency.coalesced").register(meterRegistry);
+        bus.subscribe((key, txId) -> {
+            CompletableFuture<Long> f = remoteWaits.remove(key);
+            if (f != null) f.complete(txId);
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Registers the caller as the local owner of the key.
+     *
+     * @return null if the caller is now the owner (it must call {@link #finish}), otherwise the owner's future
+     */
+    public CompletableFuture<Long> joinInFlight(String key) {
+        CompletableFuture<Long> mine = new CompletableFuture<>();
+        CompletableFuture<Long> owner = inFlight.putIfAbsent(key, mine);
+        if (owner != null) coalesced.increment();
+        return owner;
+    }
+
+    /**
+     * Ends local ownership of the key and wakes coalesced waiters.
+     *
+     * @param txId transaction id, or null if the owner failed (waiters then run the request themselves)
+     */
+    public void finish(String key, Long txId) {
+        CompletableFuture<Long> mine = inFlight.remove(key);
+        if (mine != null) mine.complete(txId);
+    }
+
+    /**
+     * Waits for the local owner of the key.
+     *
+     * @return its transaction id, or null if it failed or did not finish in time
+     */
+    public Long awaitLocal(CompletableFuture<Long> owner) {
+        long start = System.nanoTime();
+        Long txId = null;
+        String outcome = "timeout";
+        try {
+            txId = owner.get(timeoutMs, TimeUnit.MILLISECONDS);
+            outcome = txId != null ? "completed" : "released";
+        } catch (TimeoutException | ExecutionException e) {
+            // fall through with null: the caller proceeds on its own
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for idempotency key", e);
+        } finally {
+            record("local", outcome, start);
+        }
+        return txId;
+    }
+
+    /**
+     * Waits while another instance holds the key, re-checking it whenever that claim ends.
+     *
+     * @param claimOrGet one claim-or-get round trip for the key that also registers the wait with the owner
+     *                   ({@link IdempotencyCache#claimOrWatch}), so the owner announces the end of its claim
+     * @return the last claim state: COMPLETED, CLAIMED (the other claim was released), or IN_PROGRESS on timeout
+     */
+    public IdempotencyClaim awaitRemote(String key, Supplier<IdempotencyClaim> claimOrGet) {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        IdempotencyClaim claim = IdempotencyClaim.inProgress();
+        CompletableFuture<Long> woken = null;
+        try {
+            while (true) {
+                // Subscribe before re-checking, so a claim ending in between is not missed
+                woken = remoteWaits.computeIfAbsent(key, k -> new CompletableFuture<>());
+                claim = claimOrGet.get();
+                if (claim.status() != IdempotencyClaim.Status.IN_PROGRESS) return claim;
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return claim;
+                Long txId = woken.get(remaining, TimeUnit.NANOSECONDS);
+                if (txId != null) {
+                    claim = IdempotencyClaim.completed(txId);
+                    return claim;
+                }
+                // released: loop to claim the key (or find it re-claimed)
+            }
+        } catch (TimeoutException | ExecutionException e) {
+            return claim;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for idempotency key", e);
+        } finally {
+            // Keys that were never announced (completed in between, timed out) must not pile up
+            if (woken != null) remoteWaits.remove(key, woken);
+            String outcome = switch (claim.status()) {
+                case COMPLETED -> "completed";
+                case CLAIMED -> "released";
+                case IN_PROGRESS -> "timeout";
+            };
+            record("remote", outcome, start);
+        }
+    }
+
+    /**
+     * Announces the end of this node's claim to waiters on other nodes (only called when one registered).
+     */
+    public void publish(String key, Long txId) {
+        bus.publish(key, txId);
+    }
+
+    private void record(String scope, String outcome, long startNanos) {
+        Timer.builder("wallet.idempotency.wait")
+                .tag("scope", scope)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.walletService.idempotency;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * In-process bus for single-node mode (no Redis) and tests: every subscriber is invoked synchronously.
+ */
+@Component
+@ConditionalOnMissingBean(RedisIdempotencyResultBus.class)
+public class LocalIdempotencyResultBus implements IdempotencyResultBus {
+
+    private final List<BiConsumer<String, Long>> handlers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String key, Long txId) {
+        for (BiConsumer<String, Long> h : handlers) {
+            h.accept(key, txId);
+        }
+    }
+
+    @Override
+    public void subscribe(BiConsumer<String, Long> handler) {
+        handlers.add(handler);
+    }
+}
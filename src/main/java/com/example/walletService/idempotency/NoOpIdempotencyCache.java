@@ -12,23 +12,23 @@ import org.springframework.stereotype.Component;
 public class NoOpIdempotencyCache implements IdempotencyCache {
 
     @Override
-    public Long get(String key) {
-        return null;
+    public IdempotencyClaim claimOrGet(String key) {
+        return IdempotencyClaim.claimed(0); // no claim; DB will enforce via unique constraint
     }
 
     @Override
-    public boolean tryClaim(String key) {
-        return true; // no claim; DB will enforce via unique constraint
+    public IdempotencyClaim claimOrWatch(String key) {
+        return claimOrGet(key);
     }
 
     @Override
-    public void put(String key, long txId, int ttlSeconds) {
-        // no-op
+    public boolean complete(String key, long fencingToken, long txId) {
+        return false;
     }
 
     @Override
-    public void delete(String key) {
-        // no-op
+    public boolean release(String key, long fencingToken) {
+        return false;
     }
 
     @Override
@@ -1,54 +1,149 @@
 package com.example.walletService.idempotency;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 
-import java.util.concurrent.TimeUnit;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
+/**
+ * Redis idempotency cache. Each operation is one Lua script (one round trip).
+ * <p>
+ * Values are 9 bytes: a tag byte ({@link #TAG_CLAIM} or {@link #TAG_DONE}) followed by a big-endian long,
+ * the fencing token for a claim or the transaction id for a completed key. Fencing tokens come from a
+ * Redis counter, so every claim of a key is distinct; complete/release only act on the caller's own claim.
+ * <p>
+ * A caller that waits for another caller's claim ({@link #claimOrWatch}) sets a flag key next to it;
+ * complete/release clear the flag and report it, so claim endings are only published when someone waits.
+ */
 @Component
 @ConditionalOnProperty(name = "wallet.idempotency.redis.enabled", havingValue = "true")
-@RequiredArgsConstructor
 @Slf4j
 public class RedisIdempotencyCache implements IdempotencyCache {
 
-    private final StringRedisTemplate redis;
+    static final byte TAG_CLAIMED_BY_CALLER = 0; // only in claimOrGet replies, never stored
+    static final byte TAG_CLAIM = 1;
+    static final byte TAG_DONE = 2;
+
+    private static final byte[] FENCE_KEY = "idempotency-fence".getBytes(StandardCharsets.UTF_8);
+    private static final String WAITERS_PREFIX = "idempotency-waiters:";
+
+    /**
+     * KEYS[1]=key, KEYS[2]=fence counter, KEYS[3]=waiters flag, ARGV[1]=claim ttl, ARGV[2]=1 to watch a
+     * held claim. Returns the stored value, or for a new claim the claim with tag 0 (so the caller knows it
+     * won). Lua 5.1 numbers are doubles: exact up to 2^53.
+     */
+    private static final RedisScript<byte[]> CLAIM_OR_GET = new DefaultRedisScript<>("""
+            local cur = redis.call('GET', KEYS[1])
+            if cur then
+              if ARGV[2] == '1' and string.byte(cur, 1) == 1 then
+                redis.call('SET', KEYS[3], '1', 'EX', ARGV[1])
+              end
+              return cur
+            end
+            local token = redis.call('INCR', KEYS[2])
+            local b = {}
+            for i = 8, 1, -1 do
+              b[i] = token % 256
+              token = math.floor(token / 256)
+            end
+            local tail = string.char(unpack(b))
+            redis.call('SET', KEYS[1], string.char(1) .. tail, 'EX', ARGV[1])
+            return string.char(0) .. tail
+            """, byte[].class);
+
+    /**
+     * KEYS[1]=key, KEYS[2]=waiters flag, ARGV[1]=own claim, ARGV[2]=result, ARGV[3]=ttl. Writes if the key
+     * holds our claim or expired. Returns 0 if not written, else 1 + whether someone waited.
+     */
+    private static final RedisScript<Long> COMPLETE = new DefaultRedisScript<>("""
+            local cur = redis.call('GET', KEYS[1])
+            if cur and cur ~= ARGV[1] then return 0 end
+            redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3])
+            return 1 + redis.call('DEL', KEYS[2])
+            """, Long.class);
+
+    /** KEYS[1]=key, KEYS[2]=waiters flag, ARGV[1]=own claim. Deletes only our own claim; return as COMPLETE. */
+    private static final RedisScript<Long> RELEASE = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+              redis.call('DEL', KEYS[1])
+              return 1 + redis.call('DEL', KEYS[2])
+            end
+            return 0
+            """, Long.class);
+
+    private final RedisTemplate<byte[], byte[]> redis;
+
+    public RedisIdempotencyCache(@Qualifier("binaryRedisTemplate") RedisTemplate<byte[], byte[]> redis) {
+        this.redis = redis;
+    }
 
     @Override
-    public Long get(String key) {
-        String k = PREFIX + key;
-        String val = redis.opsForValue().get(k);
-        if (val == null) return null;
-        if (CLAIM_VALUE.equals(val)) return null; // still processing
-        try {
-            return Long.parseLong(val);
-        } catch (NumberFormatException e) {
-            return null;
-        }
+    public IdempotencyClaim claimOrGet(String key) {
+        return claimOrGet(key, false);
     }
 
     @Override
-    public boolean tryClaim(String key) {
-        String k = PREFIX + key;
-        Boolean set = redis.opsForValue().setIfAbsent(k, CLAIM_VALUE, CLAIM_TTL_SECONDS, TimeUnit.SECONDS);
-        return Boolean.TRUE.equals(set);
+    public IdempotencyClaim claimOrWatch(String key) {
+        return claimOrGet(key, true);
+    }
+
+    private IdempotencyClaim claimOrGet(String key, boolean watch) {
+        byte[] val = redis.execute(CLAIM_OR_GET, List.of(key(key), FENCE_KEY, waiters(key)),
+                ascii(CLAIM_TTL_SECONDS), ascii(watch ? 1 : 0));
+        if (val == null || val.length != 9) {
+            // Unknown (e.g. legacy string) value: treat as busy rather than risk a second execution
+            log.debug("Unexpected idempotency value for key {}", key);
+            return IdempotencyClaim.inProgress();
+        }
+        long payload = ByteBuffer.wrap(val, 1, 8).getLong();
+        return switch (val[0]) {
+            case TAG_CLAIMED_BY_CALLER -> IdempotencyClaim.claimed(payload);
+            case TAG_DONE -> IdempotencyClaim.completed(payload);
+            default -> IdempotencyClaim.inProgress();
+        };
     }
 
     @Override
-    public void put(String key, long txId, int ttlSeconds) {
-        String k = PREFIX + key;
-        redis.opsForValue().set(k, String.valueOf(txId), ttlSeconds, TimeUnit.SECONDS);
+    public boolean complete(String key, long fencingToken, long txId) {
+        Long written = redis.execute(COMPLETE, List.of(key(key), waiters(key)),
+                encode(TAG_CLAIM, fencingToken), encode(TAG_DONE, txId), ascii(SUCCESS_TTL_SECONDS));
+        if (written == null || written == 0) {
+            log.debug("Idempotency key {} was re-claimed or completed by another caller; result not stored", key);
+        }
+        return written != null && written == 2;
     }
 
     @Override
-    public void delete(String key) {
-        redis.delete(PREFIX + key);
+    public boolean release(String key, long fencingToken) {
+        Long released = redis.execute(RELEASE, List.of(key(key), waiters(key)), encode(TAG_CLAIM, fencingToken));
+        return released != null && released == 2;
     }
 
     @Override
     public boolean isActive() {
         return true;
     }
+
+    static byte[] encode(byte tag, long payload) {
+        return ByteBuffer.allocate(9).put(tag).putLong(payload).array();
+    }
+
+    private static byte[] key(String key) {
+        return (PREFIX + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] waiters(String key) {
+        return (WAITERS_PREFIX + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] ascii(int n) {
+        return Integer.toString(n).getBytes(StandardCharsets.US_ASCII);
+    }
 }
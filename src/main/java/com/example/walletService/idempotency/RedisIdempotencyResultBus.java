@@ -0,0 +1,57 @@
+package com.example.walletService.idempotency;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Claim endings over Redis pub/sub. Messages are "nodeId|txId|key" (txId empty on release; the key goes
+ * last since it may contain '|'). An instance ignores its own messages. A lost message only means the
+ * waiter runs into its timeout and re-checks the key.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.idempotency.redis.enabled", havingValue = "true")
+@Slf4j
+public class RedisIdempotencyResultBus implements IdempotencyResultBus {
+
+    private final StringRedisTemplate redis;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final List<BiConsumer<String, Long>> handlers = new CopyOnWriteArrayList<>();
+
+    public RedisIdempotencyResultBus(StringRedisTemplate redis, RedisMessageListenerContainer listenerContainer) {
+        this.redis = redis;
+        listenerContainer.addMessageListener(this::onMessage, new ChannelTopic(CHANNEL));
+    }
+
+    @Override
+    public void publish(String key, Long txId) {
+        redis.convertAndSend(CHANNEL, nodeId + "|" + (txId == null ? "" : txId) + "|" + key);
+    }
+
+    @Override
+    public void subscribe(BiConsumer<String, Long> handler) {
+        handlers.add(handler);
+    }
+
+    private void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\|", 3);
+        if (parts.length != 3 || parts[0].equals(nodeId)) return;
+        try {
+            Long txId = parts[1].isEmpty() ? null : Long.parseLong(parts[1]);
+            handlers.forEach(h -> h.accept(parts[2], txId));
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring malformed idempotency message: {}", body);
+        }
+    }
+}
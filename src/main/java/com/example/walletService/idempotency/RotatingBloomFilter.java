@@ -0,0 +1,124 @@
+package com.example.walletService.idempotency;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock-free Bloom filter over strings with two generations: keys go into the current generation, lookups
+ * check both. When the current generation holds its planned number of keys it becomes the previous one
+ * and a fresh generation starts, so memory and false-positive rate stay bounded while the most recent
+ * 1–2 generations of keys are remembered. "Not contained" is exact for remembered keys; "contained" may
+ * be a false positive.
+ */
+public final class RotatingBloomFilter {
+
+    private final int capacity;
+    private final int numBits;
+    private final int numHashes;
+
+    private final ReentrantLock rotateLock = new ReentrantLock(); // not synchronized: never pin a virtual thread
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    /**
+     * @param capacity keys per generation
+     * @param fpp      target false-positive probability of one full generation
+     */
+    public RotatingBloomFilter(int capacity, double fpp) {
+        if (capacity <= 0 || fpp <= 0 || fpp >= 1) throw new IllegalArgumentException("capacity > 0, 0 < fpp < 1");
+        this.capacity = capacity;
+        // Standard sizing: m = -n ln p / (ln 2)^2, k = m/n ln 2
+        long bits = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = (int) Math.min(Math.max(bits, 64), Integer.MAX_VALUE - 63);
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+        this.current = new Generation(numBits);
+        this.previous = new Generation(numBits);
+    }
+
+    public boolean mightContain(String key) {
+        long h = hash(key);
+        return current.mightContain(h, numHashes) || previous.mightContain(h, numHashes);
+    }
+
+    public void put(String key) {
+        long h = hash(key);
+        Generation g = current;
+        g.put(h, numHashes);
+        if (g.count.incrementAndGet() == capacity) rotate(g);
+    }
+
+    /** Keys in the current and previous generation (approximate under concurrency). */
+    public long size() {
+        return current.count.get() + previous.count.get();
+    }
+
+    /** Expected false-positive probability of a lookup right now, from the fill of both generations. */
+    public double expectedFpp() {
+        double miss = (1 - generationFpp(current)) * (1 - generationFpp(previous));
+        return 1 - miss;
+    }
+
+    private void rotate(Generation full) {
+        rotateLock.lock();
+        try {
+            if (current != full) return;
+            previous = full;
+            current = new Generation(numBits);
+        } finally {
+            rotateLock.unlock();
+        }
+    }
+
+    private double generationFpp(Generation g) {
+        return Math.pow(1 - Math.exp(-(double) numHashes * g.count.get() / numBits), numHashes);
+    }
+
+    /** 64-bit FNV-1a over UTF-8 with a final avalanche (murmur3 fmix64); split into two 32-bit hashes. */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Generation {
+        final AtomicLongArray words;
+        final int numBits;
+        final AtomicLong count = new AtomicLong();
+
+        Generation(int numBits) {
+            this.numBits = numBits;
+            this.words = new AtomicLongArray((numBits + 63) >>> 6);
+        }
+
+        // Kirsch–Mitzenmacher double hashing: bit_i = h1 + i * h2
+        boolean mightContain(long h, int k) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 1; i <= k; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        void put(long h, int k) {
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32);
+            for (int i = 1; i <= k; i++) {
+                int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+                long mask = 1L << bit;
+                words.getAndAccumulate(bit >>> 6, mask, (a, b) -> a | b);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.walletService.repository;
+
+import com.example.walletService.exception.WalletException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Access to idempotency_keys (V9 migration): one row per (scope, md5(key)) pointing at the transaction
+ * that used the key. Runs on the JPA transaction's connection. Inserting a key that exists fails with
+ * a unique violation ({@link org.springframework.dao.DuplicateKeyException}), which is how parallel
+ * duplicates are detected.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IdempotencyKeyRepository {
+
+    private final JdbcTemplate jdbc;
+
+    /** A raw idempotency key within its scope (user id, or 0 for system-initiated transfers). */
+    public record Key(long scopeId, String rawKey) {
+
+        /** String form "scope:key", used for cache and in-memory lookups. */
+        public String scoped() {
+            return scopeId + ":" + rawKey;
+        }
+    }
+
+    public record KeyRow(long scopeId, String rawKey, long transactionId) {}
+
+    /**
+     * Returns the transaction that used this key, if any.
+     *
+     * @throws WalletException 409 if a different key of the same scope has the same hash
+     */
+    public Optional<Long> findTransactionId(long scopeId, String rawKey) {
+        List<Long> ids = jdbc.query(
+                "SELECT raw_key, transaction_id FROM idempotency_keys WHERE scope_id = ? AND key_hash = ?",
+                (rs, i) -> {
+                    checkSameKey(rs.getString("raw_key"), rawKey);
+                    return rs.getLong("transaction_id");
+                },
+                scopeId, hash(rawKey));
+        return ids.stream().findFirst();
+    }
+
+    /**
+     * Looks up many keys in one statement.
+     *
+     * @return transaction id by key, for keys that were used
+     */
+    public Map<Key, Long> findTransactionIds(Collection<Key> keys) {
+        Map<Key, Long> found = new HashMap<>();
+        if (keys.isEmpty()) return found;
+        Map<List<Object>, Key> byHash = new HashMap<>();
+        StringBuilder sql = new StringBuilder(
+                "SELECT scope_id, key_hash, raw_key, transaction_id FROM idempotency_keys WHERE (scope_id, key_hash) IN (");
+        List<Object> args = new ArrayList<>(keys.size() * 2);
+        int i = 0;
+        for (Key k : keys) {
+            UUID h = hash(k.rawKey());
+            sql.append(i++ == 0 ? "(?, ?)" : ", (?, ?)");
+            args.add(k.scopeId());
+            args.add(h);
+            byHash.put(List.of(k.scopeId(), h), k);
+        }
+        sql.append(")");
+        jdbc.query(sql.toString(), rs -> {
+            Key k = byHash.get(List.of(rs.getLong("scope_id"), rs.getObject("key_hash", UUID.class)));
+            checkSameKey(rs.getString("raw_key"), k.rawKey());
+            found.put(k, rs.getLong("transaction_id"));
+        }, args.toArray());
+        return found;
+    }
+
+    public void insert(long scopeId, String rawKey, long transactionId) {
+        jdbc.update("INSERT INTO idempotency_keys (scope_id, key_hash, raw_key, transaction_id) VALUES (?, ?, ?, ?)",
+                scopeId, hash(rawKey), rawKey, transactionId);
+    }
+
+    /**
+     * Inserts all keys in one statement.
+     */
+    public void insertAll(List<KeyRow> rows) {
+        if (rows.isEmpty()) return;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO idempotency_keys (scope_id, key_hash, raw_key, transaction_id, created_at) VALUES ");
+        List<Object> args = new ArrayList<>(rows.size() * 5);
+        for (int i = 0; i < rows.size(); i++) {
+            KeyRow r = rows.get(i);
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?)");
+            args.add(r.scopeId());
+            args.add(hash(r.rawKey()));
+            args.add(r.rawKey());
+            args.add(r.transactionId());
+            args.add(now);
+        }
+        jdbc.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * Keys created since the given time, streamed in chunks (needs an open transaction for the
+     * server-side cursor). Close the stream.
+     */
+    public Stream<Key> streamKeysSince(LocalDateTime since) {
+        return jdbc.queryForStream(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "SELECT scope_id, raw_key FROM idempotency_keys WHERE created_at >= ?");
+            ps.setFetchSize(5000);
+            ps.setTimestamp(1, Timestamp.valueOf(since));
+            return ps;
+        }, (rs, i) -> new Key(rs.getLong("scope_id"), rs.getString("raw_key")));
+    }
+
+    /**
+     * Deletes up to {@code limit} keys created before the cutoff.
+     *
+     * @return number of deleted rows
+     */
+    public int purgeBefore(LocalDateTime cutoff, int limit) {
+        return jdbc.update("""
+                DELETE FROM idempotency_keys
+                WHERE ctid = ANY (ARRAY(SELECT ctid FROM idempotency_keys WHERE created_at < ? LIMIT ?))
+                """, Timestamp.valueOf(cutoff), limit);
+    }
+
+    /** md5 of the UTF-8 key as a UUID; same value as md5(key)::uuid in SQL. */
+    public static UUID hash(String rawKey) {
+        try {
+            byte[] md5 = MessageDigest.getInstance("MD5").digest(rawKey.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer b = ByteBuffer.wrap(md5);
+            return new UUID(b.getLong(), b.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void checkSameKey(String stored, String rawKey) {
+        if (!stored.equals(rawKey)) {
+            throw new WalletException("Idempotency key collides with another key; use a different key", 409);
+        }
+    }
+}
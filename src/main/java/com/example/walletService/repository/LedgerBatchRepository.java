@@ -0,0 +1,42 @@
+package com.example.walletService.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multi-row inserts for ledger entries, used when many transfers are written in one DB transaction.
+ * Runs on the JPA transaction's connection.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerBatchRepository {
+
+    private final JdbcTemplate jdbc;
+
+    public record LedgerRow(long transactionId, long walletId, long amount) {}
+
+    /**
+     * Inserts all ledger entries in one statement.
+     */
+    public void insertLedgerEntries(List<LedgerRow> rows) {
+        if (rows.isEmpty()) return;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        StringBuilder sql = new StringBuilder("INSERT INTO ledger_entries (transaction_id, wallet_id, amount, created_at) VALUES ");
+        List<Object> args = new ArrayList<>(rows.size() * 4);
+        for (int i = 0; i < rows.size(); i++) {
+            LedgerRow r = rows.get(i);
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            args.add(r.transactionId());
+            args.add(r.walletId());
+            args.add(r.amount());
+            args.add(now);
+        }
+        jdbc.update(sql.toString(), args.toArray());
+    }
+}
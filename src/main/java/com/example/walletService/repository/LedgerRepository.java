@@ -1,15 +1,109 @@
 package com.example.walletService.repository;
 
+import com.example.walletService.dto.TransactionHistoryItem;
 import com.example.walletService.entity.LedgerEntry;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface LedgerRepository extends JpaRepository<LedgerEntry, Long> {
 
-    @Query("SELECT COALESCE(SUM(l.amount), 0) FROM LedgerEntry l WHERE l.walletId = :walletId")
+    /**
+     * Full ledger sum for the wallet, including totals of archived (detached) partitions; hot paths read
+     * wallets.balance instead (used for reconciliation and system wallets).
+     */
+    @Query(value = """
+            SELECT COALESCE((SELECT SUM(amount) FROM ledger_entries WHERE wallet_id = :walletId), 0)
+                 + COALESCE((SELECT SUM(amount) FROM ledger_archive_totals WHERE wallet_id = :walletId), 0)
+            """, nativeQuery = true)
     Long getBalance(Long walletId);
 
-    List<LedgerEntry> findByWalletIdOrderByCreatedAtDesc(Long walletId);
+    /**
+     * Ledger balance of a system wallet aggregated across the root and all of its shards: per shard, its
+     * system_wallet_balances snapshot plus the entries created since (V13 migration).
+     */
+    @Query(value = """
+            SELECT COALESCE(SUM(
+                       COALESCE(s.balance, (SELECT COALESCE(SUM(a.amount), 0) FROM ledger_archive_totals a WHERE a.wallet_id = w.id))
+                     + (SELECT COALESCE(SUM(e.amount), 0) FROM ledger_entries e
+                        WHERE e.wallet_id = w.id AND e.created_at >= COALESCE(s.covered_until, '-infinity'::timestamp))), 0)
+            FROM wallets w LEFT JOIN system_wallet_balances s ON s.wallet_id = w.id
+            WHERE w.id = :id OR w.parent_wallet_id = :id
+            """, nativeQuery = true)
+    Long getAggregatedBalance(Long id);
+
+    /** Ledger balance of one system wallet or shard, from its snapshot like {@link #getAggregatedBalance}. */
+    @Query(value = """
+            SELECT COALESCE(s.balance, (SELECT COALESCE(SUM(a.amount), 0) FROM ledger_archive_totals a WHERE a.wallet_id = w.id))
+                 + (SELECT COALESCE(SUM(e.amount), 0) FROM ledger_entries e
+                    WHERE e.wallet_id = w.id AND e.created_at >= COALESCE(s.covered_until, '-infinity'::timestamp))
+            FROM wallets w LEFT JOIN system_wallet_balances s ON s.wallet_id = w.id
+            WHERE w.id = :walletId
+            """, nativeQuery = true)
+    Long getSystemBalance(Long walletId);
+
+    /**
+     * Moves the system wallet snapshots forward to {@code cutoff}: adds the entries created between the
+     * old and the new covered_until (all entries for a wallet without a snapshot). Snapshots never move back,
+     * so concurrent runs on several instances are harmless.
+     *
+     * @return number of snapshots written
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO system_wallet_balances (wallet_id, balance, covered_until)
+            SELECT w.id,
+                   COALESCE(s.balance, (SELECT COALESCE(SUM(a.amount), 0) FROM ledger_archive_totals a WHERE a.wallet_id = w.id))
+                 + (SELECT COALESCE(SUM(e.amount), 0) FROM ledger_entries e
+                    WHERE e.wallet_id = w.id
+                      AND e.created_at >= COALESCE(s.covered_until, '-infinity'::timestamp)
+                      AND e.created_at < :cutoff),
+                   :cutoff
+            FROM wallets w LEFT JOIN system_wallet_balances s ON s.wallet_id = w.id
+            WHERE w.user_id IS NULL AND (s.covered_until IS NULL OR s.covered_until < :cutoff)
+            ON CONFLICT (wallet_id) DO UPDATE
+                SET balance = EXCLUDED.balance, covered_until = EXCLUDED.covered_until
+                WHERE system_wallet_balances.covered_until < EXCLUDED.covered_until
+            """, nativeQuery = true)
+    int foldSystemBalances(LocalDateTime cutoff);
+
+    /** First page of history, newest first (keyset order: createdAt, transactionId). */
+    @Query("""
+            SELECT new com.example.walletService.dto.TransactionHistoryItem(l.transactionId, t.type, t.status, l.amount, l.createdAt)
+            FROM LedgerEntry l JOIN Transaction t ON t.id = l.transactionId
+            WHERE l.walletId = :walletId
+            ORDER BY l.createdAt DESC, l.transactionId DESC
+            """)
+    List<TransactionHistoryItem> findHistory(Long walletId, Limit limit);
+
+    /** Next page of history: items strictly after the cursor position. */
+    @Query("""
+            SELECT new com.example.walletService.dto.TransactionHistoryItem(l.transactionId, t.type, t.status, l.amount, l.createdAt)
+            FROM LedgerEntry l JOIN Transaction t ON t.id = l.transactionId
+            WHERE l.walletId = :walletId
+              AND (l.createdAt < :createdAt OR (l.createdAt = :createdAt AND l.transactionId < :transactionId))
+            ORDER BY l.createdAt DESC, l.transactionId DESC
+            """)
+    List<TransactionHistoryItem> findHistoryAfter(Long walletId, LocalDateTime createdAt, Long transactionId, Limit limit);
+
+    /**
+     * Full history as a stream over a server-side cursor (needs an open transaction); rows are fetched
+     * in chunks and never held on the heap all at once.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("""
+            SELECT new com.example.walletService.dto.TransactionHistoryItem(l.transactionId, t.type, t.status, l.amount, l.createdAt)
+            FROM LedgerEntry l JOIN Transaction t ON t.id = l.transactionId
+            WHERE l.walletId = :walletId
+            ORDER BY l.createdAt DESC, l.transactionId DESC
+            """)
+    Stream<TransactionHistoryItem> streamHistory(Long walletId);
 }
@@ -2,9 +2,16 @@ package com.example.walletService.repository;
 
 import com.example.walletService.entity.Transaction;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
-import java.util.Optional;
+import java.util.Collection;
 
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
-    Optional<Transaction> findByIdempotencyKey(String key);
-}
\ No newline at end of file
+
+    /** Completes async transfers (PENDING -> SUCCESS or FAILED). */
+    @Modifying
+    @Query("UPDATE Transaction t SET t.status = :status WHERE t.id IN :ids")
+    int updateStatus(@Param("ids") Collection<Long> ids, @Param("status") String status);
+}
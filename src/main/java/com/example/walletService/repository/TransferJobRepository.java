@@ -0,0 +1,223 @@
+package com.example.walletService.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Access to transfer_jobs (V11 migration), the queue of async transfers. Runs on the JPA transaction's
+ * connection; a claimed wallet stays locked until that transaction ends, so a worker that dies mid-way
+ * leaves its jobs to the next claim.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TransferJobRepository {
+
+    /** Wallets considered per claim; more only matter when that many workers race for the same wallets. */
+    private static final int CLAIM_CANDIDATES = 16;
+
+    private final JdbcTemplate jdbc;
+
+    /**
+     * One queued transfer; its transaction row exists with status PENDING.
+     *
+     * @param walletId the user wallet of the transfer, by which jobs are grouped
+     */
+    public record TransferJob(
+            long transactionId,
+            long walletId,
+            long fromWalletId,
+            long toWalletId,
+            long amount,
+            String type,
+            long scopeId,
+            String idempotencyKey,
+            int attempts,
+            LocalDateTime createdAt
+    ) {}
+
+    /**
+     * Status of a transaction, with the error of its failed job if any.
+     *
+     * @param errorStatus HTTP status of the failure (null if unknown, e.g. the failed job was purged)
+     */
+    public record JobStatus(String status, String error, Integer errorStatus) {}
+
+    /** Why a job failed for good: message and HTTP status, as the sync endpoint would have answered. */
+    public record JobError(String message, int status) {}
+
+    private record ClaimRow(TransferJob job, boolean ready) {}
+
+    private static final RowMapper<TransferJob> JOB = (rs, i) -> new TransferJob(
+            rs.getLong("transaction_id"),
+            rs.getLong("wallet_id"),
+            rs.getLong("from_wallet_id"),
+            rs.getLong("to_wallet_id"),
+            rs.getLong("amount"),
+            rs.getString("type"),
+            rs.getLong("scope_id"),
+            rs.getString("idempotency_key"),
+            rs.getInt("attempts"),
+            rs.getTimestamp("created_at").toLocalDateTime());
+
+    public void insert(long transactionId, long walletId, long fromWalletId, long toWalletId, long amount,
+                       String type, long scopeId, String idempotencyKey) {
+        jdbc.update("""
+                INSERT INTO transfer_jobs (transaction_id, wallet_id, from_wallet_id, to_wallet_id, amount, type,
+                                           scope_id, idempotency_key)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                """, transactionId, walletId, fromWalletId, toWalletId, amount, type, scopeId, idempotencyKey);
+    }
+
+    /**
+     * Claims the jobs of one wallet, in transaction id order (submission order). Only one transaction at a
+     * time works on a wallet: the wallet is taken with pg_try_advisory_xact_lock (held until commit or
+     * rollback), and wallets already taken are skipped, never waited for. A wallet is only picked when its
+     * oldest pending job is ready, so a deferred job also holds back the later jobs of its wallet; the claim
+     * stops at the first job that is not ready.
+     * <p>
+     * This deliberately does not use FOR UPDATE SKIP LOCKED on the job rows: skipping locked rows let a
+     * worker claim a later job of a wallet while an earlier one was locked by another worker (or deferred),
+     * so the wallet's jobs could be applied out of submission order. The advisory lock skips whole wallets
+     * instead; the FOR UPDATE that follows never waits, since the jobs of a wallet are only locked by the
+     * holder of its advisory lock.
+     *
+     * @param limit max jobs claimed
+     * @return the claimed jobs, empty if no wallet has a ready job that is not taken
+     */
+    public List<TransferJob> claimWalletGroup(int limit) {
+        List<Long> candidates = jdbc.queryForList("""
+                SELECT j.wallet_id FROM transfer_jobs j
+                WHERE j.error IS NULL AND j.run_after <= now()
+                  AND NOT EXISTS (SELECT 1 FROM transfer_jobs o
+                                  WHERE o.wallet_id = j.wallet_id AND o.error IS NULL
+                                    AND o.transaction_id < j.transaction_id)
+                ORDER BY j.run_after, j.transaction_id
+                LIMIT ?
+                """, Long.class, CLAIM_CANDIDATES);
+        for (Long walletId : candidates) {
+            if (!Boolean.TRUE.equals(jdbc.queryForObject("SELECT pg_try_advisory_xact_lock(?)", Boolean.class, walletId))) {
+                continue;
+            }
+            // The wallet may have been drained since the candidate query; rows are ours while the lock is held
+            List<TransferJob> ready = new ArrayList<>();
+            for (ClaimRow row : jdbc.query("""
+                    SELECT j.*, j.run_after <= now() AS ready FROM transfer_jobs j
+                    WHERE j.wallet_id = ? AND j.error IS NULL
+                    ORDER BY j.transaction_id
+                    LIMIT ?
+                    FOR UPDATE
+                    """, (rs, i) -> new ClaimRow(JOB.mapRow(rs, i), rs.getBoolean("ready")), walletId, limit)) {
+                if (!row.ready()) break;
+                ready.add(row.job());
+            }
+            if (!ready.isEmpty()) return ready;
+        }
+        return List.of();
+    }
+
+    public void delete(Collection<Long> transactionIds) {
+        if (transactionIds.isEmpty()) return;
+        List<Object> args = new ArrayList<>(transactionIds);
+        jdbc.update("DELETE FROM transfer_jobs WHERE transaction_id IN (" + placeholders(args.size()) + ")",
+                args.toArray());
+    }
+
+    /** Marks jobs as failed for good; they are no longer claimed and their error is reported until purged. */
+    public void fail(Map<Long, JobError> errorByTransactionId) {
+        if (errorByTransactionId.isEmpty()) return;
+        List<Object[]> args = new ArrayList<>(errorByTransactionId.size());
+        errorByTransactionId.forEach((id, error) -> args.add(new Object[]{truncate(error.message()), error.status(), id}));
+        jdbc.batchUpdate("UPDATE transfer_jobs SET error = ?, error_status = ? WHERE transaction_id = ?", args);
+    }
+
+    /**
+     * Counts a failed attempt and delays the jobs by {@code backoffMs * 2^attempts}. Jobs that reach
+     * {@code maxAttempts} are failed for good with the given error (status 500).
+     *
+     * @return transaction ids of the jobs that failed for good
+     */
+    public List<Long> defer(Collection<Long> transactionIds, long backoffMs, int maxAttempts, String error) {
+        if (transactionIds.isEmpty()) return List.of();
+        List<Object> args = new ArrayList<>();
+        args.add(backoffMs);
+        args.add(maxAttempts);
+        args.add(truncate(error));
+        args.add(maxAttempts);
+        args.addAll(transactionIds);
+        return jdbc.queryForList("""
+                WITH deferred AS (
+                    UPDATE transfer_jobs
+                    SET attempts = attempts + 1,
+                        run_after = now() + make_interval(secs => ? * power(2, LEAST(attempts, 10)) / 1000.0),
+                        error = CASE WHEN attempts + 1 >= ? THEN ? END,
+                        error_status = CASE WHEN attempts + 1 >= ? THEN 500 END
+                    WHERE transaction_id IN (%s)
+                    RETURNING transaction_id, error
+                )
+                SELECT transaction_id FROM deferred WHERE error IS NOT NULL
+                """.formatted(placeholders(transactionIds.size())), Long.class, args.toArray());
+    }
+
+    public Optional<JobStatus> findStatus(long transactionId) {
+        return jdbc.query("""
+                SELECT t.status, j.error, j.error_status
+                FROM transactions t LEFT JOIN transfer_jobs j ON j.transaction_id = t.id
+                WHERE t.id = ?
+                """, (rs, i) -> new JobStatus(rs.getString("status"), rs.getString("error"),
+                        (Integer) rs.getObject("error_status")), transactionId)
+                .stream().findFirst();
+    }
+
+    /**
+     * {@link #findStatus} for many transactions in one statement.
+     *
+     * @return status by transaction id; ids without a transaction are absent
+     */
+    public Map<Long, JobStatus> findStatuses(Collection<Long> transactionIds) {
+        Map<Long, JobStatus> statuses = new HashMap<>();
+        if (transactionIds.isEmpty()) return statuses;
+        jdbc.query("""
+                SELECT t.id, t.status, j.error, j.error_status
+                FROM transactions t LEFT JOIN transfer_jobs j ON j.transaction_id = t.id
+                WHERE t.id IN (%s)
+                """.formatted(placeholders(transactionIds.size())),
+                rs -> {
+                    statuses.put(rs.getLong("id"), new JobStatus(rs.getString("status"), rs.getString("error"),
+                            (Integer) rs.getObject("error_status")));
+                }, transactionIds.toArray());
+        return statuses;
+    }
+
+    /**
+     * Deletes up to {@code limit} failed jobs created before the cutoff (their transactions stay FAILED).
+     *
+     * @return number of deleted rows
+     */
+    public int purgeFailedBefore(LocalDateTime cutoff, int limit) {
+        return jdbc.update("""
+                DELETE FROM transfer_jobs
+                WHERE ctid = ANY (ARRAY(SELECT ctid FROM transfer_jobs WHERE error IS NOT NULL AND created_at < ? LIMIT ?))
+                """, Timestamp.valueOf(cutoff), limit);
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    private static String truncate(String error) {
+        if (error == null) return "Transfer failed";
+        return error.length() <= 500 ? error : error.substring(0, 500);
+    }
+}
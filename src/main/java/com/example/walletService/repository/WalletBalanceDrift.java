@@ -0,0 +1,13 @@
+package com.example.walletService.repository;
+
+/**
+ * Projection for a wallet whose stored balance does not match SUM(ledger_entries.amount).
+ */
+public interface WalletBalanceDrift {
+
+    Long getWalletId();
+
+    Long getStoredBalance();
+
+    Long getLedgerBalance();
+}
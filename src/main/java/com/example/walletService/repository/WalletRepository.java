@@ -5,6 +5,8 @@ import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface WalletRepository extends JpaRepository<Wallet, Long> {
@@ -13,5 +15,62 @@ public interface WalletRepository extends JpaRepository<Wallet, Long> {
     @Query("SELECT w FROM Wallet w WHERE w.id = :id")
     Wallet lockWalletForUpdate(@Param("id") Long id);
 
+    /** Locks several wallets in one round trip; rows are locked in ascending id order. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT w FROM Wallet w WHERE w.id IN :ids ORDER BY w.id")
+    List<Wallet> lockWalletsForUpdate(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Optimistic balance change: applies only if the row still has the expected version and the balance
+     * stays non-negative; bumps the version. Returns 0 on conflict (or insufficient funds).
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE wallets SET balance = balance + :delta, version = version + 1
+            WHERE id = :id AND version = :version AND balance + :delta >= 0
+            """, nativeQuery = true)
+    int applyDeltaIfVersion(@Param("id") Long id, @Param("delta") long delta, @Param("version") long version);
+
     Optional<Wallet> findByUserId(Long userId);
-}
\ No newline at end of file
+
+    /** Id only (index-only scan on wallets_user_asset_uk), for userId -> walletId resolution. */
+    @Query("SELECT w.id FROM Wallet w WHERE w.userId = :userId")
+    Optional<Long> findIdByUserId(@Param("userId") Long userId);
+
+    /** Bulk wallet resolution for batch transfers; users without a wallet are simply absent. */
+    List<Wallet> findByUserIdIn(Collection<Long> userIds);
+
+    List<Wallet> findByParentWalletIdOrderByShardNo(Long parentWalletId);
+
+    /**
+     * User wallets whose stored balance differs from the ledger sum (live entries + archived partition totals).
+     * Single statement, so both sides are read from the same snapshot.
+     */
+    @Query(value = """
+            SELECT w.id AS walletId, w.balance AS storedBalance, l.total AS ledgerBalance
+            FROM wallets w
+            CROSS JOIN LATERAL (
+                SELECT COALESCE((SELECT SUM(e.amount) FROM ledger_entries e WHERE e.wallet_id = w.id), 0)
+                     + COALESCE((SELECT SUM(a.amount) FROM ledger_archive_totals a WHERE a.wallet_id = w.id), 0) AS total
+            ) l
+            WHERE w.user_id IS NOT NULL
+              AND w.balance <> l.total
+            """, nativeQuery = true)
+    List<WalletBalanceDrift> findBalanceDrift();
+
+    /**
+     * Refreshes the stored balance of system wallets from the ledger (system_wallet_balances snapshot plus
+     * newer entries, see {@link LedgerRepository#getSystemBalance}). System wallets are append-only (no
+     * inline balance update), so their stored balance is only as fresh as the last refresh.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE wallets w
+            SET balance = COALESCE(s.balance, (SELECT COALESCE(SUM(a.amount), 0) FROM ledger_archive_totals a WHERE a.wallet_id = w.id))
+                        + (SELECT COALESCE(SUM(e.amount), 0) FROM ledger_entries e
+                           WHERE e.wallet_id = w.id AND e.created_at >= COALESCE(s.covered_until, '-infinity'::timestamp))
+            FROM wallets w2 LEFT JOIN system_wallet_balances s ON s.wallet_id = w2.id
+            WHERE w2.id = w.id AND w.user_id IS NULL
+            """, nativeQuery = true)
+    int refreshSystemBalances();
+}
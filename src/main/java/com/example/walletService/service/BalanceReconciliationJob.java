@@ -0,0 +1,75 @@
+package com.example.walletService.service;
+
+import com.example.walletService.cache.BalanceCache;
+import com.example.walletService.entity.Wallet;
+import com.example.walletService.repository.LedgerRepository;
+import com.example.walletService.repository.WalletBalanceDrift;
+import com.example.walletService.repository.WalletRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Periodically checks the materialized wallets.balance of user wallets against SUM(ledger_entries.amount).
+ * The ledger stays the source of truth; drift is logged and, if repair is enabled, the stored
+ * balance is reset from the ledger under the wallet row lock and written through to the balance cache. System wallets are append-only, so
+ * their stored balance is refreshed here as a snapshot instead of being checked.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.reconciliation.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceReconciliationJob {
+
+    private final WalletRepository walletRepo;
+    private final LedgerRepository ledgerRepo;
+    private final TransactionTemplate transactionTemplate;
+    private final BalanceCache balanceCache;
+
+    @Value("${wallet.reconciliation.repair:false}")
+    private boolean repair;
+
+    @Scheduled(cron = "${wallet.reconciliation.cron:0 */15 * * * *}")
+    public void run() {
+        reconcile();
+    }
+
+    /**
+     * Returns the drifted wallets found in this run (before any repair).
+     */
+    public List<WalletBalanceDrift> reconcile() {
+        Integer refreshed = transactionTemplate.execute(s -> walletRepo.refreshSystemBalances());
+        log.debug("Balance reconciliation: refreshed {} system wallet snapshots", refreshed);
+
+        List<WalletBalanceDrift> drift = transactionTemplate.execute(s -> walletRepo.findBalanceDrift());
+        if (drift == null || drift.isEmpty()) {
+            log.debug("Balance reconciliation: no drift");
+            return List.of();
+        }
+        for (WalletBalanceDrift d : drift) {
+            log.warn("Balance drift on wallet {}: stored={} ledger={}",
+                    d.getWalletId(), d.getStoredBalance(), d.getLedgerBalance());
+            if (repair) {
+                WalletBalance repaired = transactionTemplate.execute(s -> {
+                    // Lock first so the ledger sum below includes every committed transfer for this wallet
+                    Wallet wallet = walletRepo.lockWalletForUpdate(d.getWalletId());
+                    wallet.setBalance(ledgerRepo.getBalance(wallet.getId()));
+                    // Flush now so the bumped version is known for the cache write below
+                    walletRepo.flush();
+                    return new WalletBalance(wallet.getId(), wallet.getBalance(), wallet.getVersion());
+                });
+                // The cached (drifted) balance has an older version, so this replaces it everywhere
+                if (repaired != null && balanceCache.isActive()) {
+                    balanceCache.put(repaired.walletId(), repaired.balance(), repaired.version());
+                }
+            }
+        }
+        return drift;
+    }
+}
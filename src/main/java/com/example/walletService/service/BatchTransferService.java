@@ -0,0 +1,306 @@
+package com.example.walletService.service;
+
+import com.example.walletService.cache.BalanceCache;
+import com.example.walletService.dto.BatchItemResult;
+import com.example.walletService.dto.BatchStreamError;
+import com.example.walletService.dto.BatchTransferItem;
+import com.example.walletService.dto.TransactionRequest;
+import com.example.walletService.exception.TransferPendingException;
+import com.example.walletService.exception.WalletException;
+import com.example.walletService.repository.TransferJobRepository;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk topup/bonus for campaigns. The request body (a JSON array of {@link BatchTransferItem}) is read as a
+ * stream and processed in chunks. {@link #open} checks the start of the array before the response is
+ * committed (400 otherwise); a failure after results were streamed ends the stream with one
+ * {@link BatchStreamError} line instead. Per chunk: one bulk wallet resolution per chunk ({@link WalletIdResolver}), then the
+ * whole chunk is written in one DB transaction by {@link BatchTransferWriter} (one idempotency lookup,
+ * multi-row inserts, one commit).
+ * <p>
+ * Idempotency is per item, scoped to the user like the single endpoints, and committed atomically with
+ * its chunk: resubmitting a batch (e.g. after a dropped connection) returns DUPLICATE with the original
+ * transaction id for every item of a committed chunk and applies the rest. If a chunk fails as a whole
+ * (lock timeout, key committed concurrently by a single request, ...), its items are replayed one by one
+ * through {@link WalletService}, which keeps the usual retry and duplicate semantics; those items report
+ * COMPLETED because that path does not tell a new transfer from a duplicate. A key already taken by an
+ * async submission is reported like the single endpoints report it: PENDING while queued, FAILED with
+ * the job's error once it failed, DUPLICATE once it succeeded.
+ * Metrics: wallet.batch.items (type, status).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchTransferService {
+
+    private static final int IDEMPOTENCY_KEY_MAX = 200;
+
+    private final WalletService walletService;
+    private final BatchTransferWriter writer;
+    private final WalletIdResolver walletIds;
+    private final SystemWalletShards systemWallets;
+    private final BalanceCache balanceCache;
+    private final TransactionTemplate transactionTemplate;
+    private final DbConcurrencyLimiter dbLimiter;
+    private final TransferJobRepository transferJobs;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet.batch.chunk-size:500}")
+    private int chunkSize;
+    @Value("${wallet.batch.max-items:1000000}")
+    private int maxItems;
+    @Value("${wallet.async.enabled:false}")
+    private boolean asyncEnabled;
+
+    /**
+     * Starts reading a batch body, positioned on its first item.
+     *
+     * @throws WalletException 400 if the body does not start a JSON array
+     */
+    public JsonParser open(InputStream body) {
+        JsonParser parser = null;
+        try {
+            parser = objectMapper.getFactory().createParser(body);
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new WalletException("Batch body must be a JSON array", 400);
+            }
+            return parser;
+        } catch (IOException e) {
+            closeQuietly(parser);
+            throw new WalletException("Malformed batch body: " + e.getMessage(), 400);
+        } catch (RuntimeException e) {
+            closeQuietly(parser);
+            throw e;
+        }
+    }
+
+    /** Streams the items of an {@link #open}ed body and closes it; never throws for a bad item or chunk. */
+    public void topup(JsonParser items, Consumer<BatchItemResult> sink, Consumer<BatchStreamError> onError) {
+        run("TOPUP", SystemWalletShards.TREASURY_WALLET, items, sink, onError);
+    }
+
+    /** Bonus counterpart of {@link #topup}. */
+    public void bonus(JsonParser items, Consumer<BatchItemResult> sink, Consumer<BatchStreamError> onError) {
+        run("BONUS", SystemWalletShards.BONUS_WALLET, items, sink, onError);
+    }
+
+    private void run(String type, Long rootWalletId, JsonParser items, Consumer<BatchItemResult> sink,
+                     Consumer<BatchStreamError> onError) {
+        // The response is already committed: failures end the stream with an error line, not an exception.
+        // Chunks before the failing item are committed; resubmitting the batch is safe.
+        int count = 0;
+        try (JsonParser parser = items) {
+            List<BatchTransferItem> chunk = new ArrayList<>(chunkSize);
+            int firstIndex = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (count == maxItems) {
+                    throw new WalletException("Batch exceeds " + maxItems + " items", 400);
+                }
+                chunk.add(objectMapper.readValue(parser, BatchTransferItem.class));
+                count++;
+                if (chunk.size() == chunkSize) {
+                    processChunk(type, rootWalletId, firstIndex, chunk, sink);
+                    firstIndex += chunk.size();
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                processChunk(type, rootWalletId, firstIndex, chunk, sink);
+            }
+        } catch (UncheckedIOException e) {
+            // Writing to the client failed: nobody is left to read an error line
+            throw e;
+        } catch (IOException e) {
+            onError.accept(new BatchStreamError(count, 400, "Malformed batch body: " + e.getMessage()));
+        } catch (WalletException e) {
+            onError.accept(new BatchStreamError(count, e.getStatusCode(), e.getMessage()));
+        } catch (RuntimeException e) {
+            log.warn("{} batch stopped after {} items", type, count, e);
+            onError.accept(new BatchStreamError(count, 500, "Batch stopped"));
+        }
+    }
+
+    private static void closeQuietly(JsonParser parser) {
+        if (parser == null) return;
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // nothing was read yet
+        }
+    }
+
+    private void processChunk(String type, Long rootWalletId, int firstIndex,
+                              List<BatchTransferItem> items, Consumer<BatchItemResult> sink) {
+        BatchItemResult[] results = new BatchItemResult[items.size()];
+
+        // --- Validation and bulk wallet resolution ---
+        Set<Long> userIds = items.stream()
+                .map(BatchTransferItem::userId)
+                .filter(id -> id != null)
+                .collect(Collectors.toSet());
+        Map<Long, Long> walletIdByUser = userIds.isEmpty() ? Map.of()
+                : dbLimiter.call(() -> walletIds.resolveAll(userIds));
+
+        // Repeated keys inside the chunk share the outcome of the first occurrence
+        Map<String, Integer> firstByKey = new HashMap<>();
+        List<TransferCommand> commands = new ArrayList<>();
+        int[] commandIndex = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            BatchTransferItem item = items.get(i);
+            String invalid = validate(item);
+            if (invalid != null) {
+                results[i] = BatchItemResult.failed(firstIndex + i, item, 400, invalid);
+                continue;
+            }
+            Long walletId = walletIdByUser.get(item.userId());
+            if (walletId == null) {
+                results[i] = BatchItemResult.failed(firstIndex + i, item, 404, "User wallet not found");
+                continue;
+            }
+            TransferCommand cmd = new TransferCommand(item.idempotencyKey().trim(), item.userId(), type,
+                    systemWallets.select(rootWalletId, walletId), walletId, item.amount());
+            Integer first = firstByKey.putIfAbsent(cmd.scopedKey(), i);
+            commandIndex[i] = first == null ? commands.size() : commandIndex[first];
+            if (first == null) commands.add(cmd);
+        }
+
+        if (!commands.isEmpty()) {
+            BatchTransferWriter.BatchResult batch = null;
+            try {
+                batch = dbLimiter.call(() -> transactionTemplate.execute(s -> writer.apply(commands)));
+            } catch (Exception e) {
+                log.debug("Batch chunk of {} transfers aborted, replaying one by one: {}", commands.size(), e.getMessage());
+            }
+            if (batch != null) {
+                // --- After commit: balances written through, as on the single path ---
+                if (balanceCache.isActive()) {
+                    for (WalletBalance b : batch.balances()) {
+                        balanceCache.put(b.walletId(), b.balance(), b.version());
+                    }
+                }
+                fillFromBatch(batch, commands, commandIndex, firstByKey, firstIndex, items, results);
+            } else {
+                fillOneByOne(type, commands, commandIndex, firstIndex, items, results);
+            }
+        }
+
+        for (BatchItemResult result : results) {
+            meterRegistry.counter("wallet.batch.items", "type", type, "status", result.status()).increment();
+            sink.accept(result);
+        }
+    }
+
+    private void fillFromBatch(BatchTransferWriter.BatchResult batch, List<TransferCommand> commands, int[] commandIndex,
+                               Map<String, Integer> firstByKey, int firstIndex,
+                               List<BatchTransferItem> items, BatchItemResult[] results) {
+        Map<Long, TransferJobRepository.JobStatus> asyncStatuses = asyncStatuses(batch);
+        for (int i = 0; i < items.size(); i++) {
+            if (results[i] != null) continue;
+            BatchTransferItem item = items.get(i);
+            TransferCommand cmd = commands.get(commandIndex[i]);
+            BatchTransferWriter.Outcome outcome = batch.outcomes().get(cmd.scopedKey());
+            if (outcome.error() != null) {
+                results[i] = BatchItemResult.failed(firstIndex + i, item,
+                        outcome.error().getStatusCode(), outcome.error().getMessage());
+            } else if (outcome.applied()) {
+                results[i] = firstByKey.get(cmd.scopedKey()) == i
+                        ? BatchItemResult.applied(firstIndex + i, item, outcome.txId())
+                        : BatchItemResult.duplicate(firstIndex + i, item, outcome.txId());
+            } else {
+                results[i] = existingResult(firstIndex + i, item, outcome.txId(), asyncStatuses.get(outcome.txId()));
+            }
+        }
+    }
+
+    /** A key committed before this chunk, reported as the single endpoints would answer it. */
+    private static BatchItemResult existingResult(int index, BatchTransferItem item, Long txId,
+                                                  TransferJobRepository.JobStatus status) {
+        if (status == null || "SUCCESS".equals(status.status())) {
+            return BatchItemResult.duplicate(index, item, txId);
+        }
+        if ("PENDING".equals(status.status())) {
+            return BatchItemResult.pending(index, item, txId);
+        }
+        return BatchItemResult.failed(index, item, status.errorStatus() != null ? status.errorStatus() : 500,
+                status.error() != null ? status.error() : "Transfer failed");
+    }
+
+    /**
+     * Statuses of the transactions the chunk found already committed, in one query. Only async
+     * submissions leave a transaction that is not SUCCESS, so nothing is looked up without them.
+     */
+    private Map<Long, TransferJobRepository.JobStatus> asyncStatuses(BatchTransferWriter.BatchResult batch) {
+        if (!asyncEnabled) return Map.of();
+        Set<Long> existing = new HashSet<>();
+        for (BatchTransferWriter.Outcome outcome : batch.outcomes().values()) {
+            if (outcome.error() == null && !outcome.applied()) existing.add(outcome.txId());
+        }
+        return existing.isEmpty() ? Map.of() : dbLimiter.call(() -> transferJobs.findStatuses(existing));
+    }
+
+    private void fillOneByOne(String type, List<TransferCommand> commands, int[] commandIndex, int firstIndex,
+                              List<BatchTransferItem> items, BatchItemResult[] results) {
+        Long[] txIds = new Long[commands.size()];
+        boolean[] pending = new boolean[commands.size()];
+        WalletException[] errors = new WalletException[commands.size()];
+        for (int c = 0; c < commands.size(); c++) {
+            TransferCommand cmd = commands.get(c);
+            TransactionRequest req = new TransactionRequest(cmd.scopeId(), cmd.amount(), cmd.idempotencyKey());
+            try {
+                txIds[c] = "TOPUP".equals(type)
+                        ? walletService.topup(req, cmd.idempotencyKey())
+                        : walletService.bonus(req, cmd.idempotencyKey());
+            } catch (TransferPendingException e) {
+                txIds[c] = e.getTransactionId();
+                pending[c] = true;
+            } catch (WalletException e) {
+                errors[c] = e;
+            } catch (RuntimeException e) {
+                log.warn("Batch item {} failed", cmd.scopedKey(), e);
+                errors[c] = new WalletException("Transfer failed", 500);
+            }
+        }
+        for (int i = 0; i < items.size(); i++) {
+            if (results[i] != null) continue;
+            int c = commandIndex[i];
+            if (errors[c] != null) {
+                results[i] = BatchItemResult.failed(firstIndex + i, items.get(i), errors[c].getStatusCode(), errors[c].getMessage());
+            } else if (pending[c]) {
+                results[i] = BatchItemResult.pending(firstIndex + i, items.get(i), txIds[c]);
+            } else {
+                results[i] = BatchItemResult.completed(firstIndex + i, items.get(i), txIds[c]);
+            }
+        }
+    }
+
+    /** Same rules as the single endpoints (TransactionRequest constraints, 1–200 char key). */
+    private static String validate(BatchTransferItem item) {
+        if (item.userId() == null) return "userId is required";
+        if (item.amount() == null || item.amount() < 1) return "amount must be at least 1";
+        String key = item.idempotencyKey();
+        if (key == null || key.isBlank()) return "idempotencyKey is required";
+        if (key.trim().length() > IDEMPOTENCY_KEY_MAX) return "Idempotency key must be 1–200 characters";
+        return null;
+    }
+}
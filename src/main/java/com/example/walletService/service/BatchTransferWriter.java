@@ -0,0 +1,187 @@
+package com.example.walletService.service;
+
+import com.example.walletService.entity.Transaction;
+import com.example.walletService.entity.Wallet;
+import com.example.walletService.exception.WalletException;
+import com.example.walletService.idempotency.IdempotencyKeyFilter;
+import com.example.walletService.repository.IdempotencyKeyRepository;
+import com.example.walletService.repository.IdempotencyKeyRepository.KeyRow;
+import com.example.walletService.repository.LedgerBatchRepository;
+import com.example.walletService.repository.LedgerBatchRepository.LedgerRow;
+import com.example.walletService.repository.TransactionRepository;
+import com.example.walletService.repository.WalletRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes many transfers in one DB transaction: one idempotency lookup, one lock per touched user wallet,
+ * batched inserts for transactions, keys and ledger legs. Used by {@link GroupCommitExecutor},
+ * {@link BatchTransferService} and {@link TransferJobWorker}. Every transfer gets its own {@link Outcome};
+ * the caller owns the transaction and the after-commit cache updates.
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchTransferWriter {
+
+    private final WalletRepository walletRepo;
+    private final TransactionRepository txRepo;
+    private final IdempotencyKeyRepository idempotencyKeys;
+    private final LedgerBatchRepository batchRepo;
+    private final TransferLockingStrategy lockingStrategy;
+    private final Optional<IdempotencyKeyFilter> keyFilter;
+
+    /** Outcome of one idempotency key in a batch. */
+    public record Outcome(Long txId, WalletException error, boolean applied) {
+        static Outcome existing(Long txId) { return new Outcome(txId, null, false); }
+        static Outcome applied(Long txId) { return new Outcome(txId, null, true); }
+        static Outcome failed(WalletException error) { return new Outcome(null, error, false); }
+    }
+
+    /** Outcomes by scoped idempotency key, and final balances of the updated wallets. */
+    public record BatchResult(Map<String, Outcome> outcomes, List<WalletBalance> balances) {}
+
+    /**
+     * Applies distinct-key transfers in the current transaction, in arrival order.
+     */
+    public BatchResult apply(List<TransferCommand> commands) {
+        Map<String, Outcome> outcomes = new HashMap<>();
+
+        // --- Idempotency: keys already committed return their existing transaction ---
+        // Only keys the filter may have seen are looked up; a missed duplicate aborts the batch at insert
+        List<IdempotencyKeyRepository.Key> keys = commands.stream()
+                .map(TransferCommand::key)
+                .filter(k -> keyFilter.isEmpty() || keyFilter.get().mightExist(k.scoped()))
+                .toList();
+        if (!keys.isEmpty()) {
+            idempotencyKeys.findTransactionIds(keys)
+                    .forEach((k, txId) -> outcomes.put(k.scoped(), Outcome.existing(txId)));
+            keyFilter.ifPresent(f -> keys.stream().filter(k -> !outcomes.containsKey(k.scoped()))
+                    .forEach(k -> f.recordFalsePositive()));
+        }
+
+        // --- One lock per touched user wallet, then funds checks against the locked rows ---
+        List<TransferCommand> fresh = commands.stream()
+                .filter(cmd -> !outcomes.containsKey(cmd.scopedKey()))
+                .toList();
+        Map<Long, Wallet> locked = lockWallets(fresh);
+        List<TransferCommand> accepted = checkFundsAndApply(fresh, locked, outcomes);
+        if (accepted.isEmpty()) return new BatchResult(outcomes, List.of());
+
+        // --- Batched inserts: transactions (JDBC batch, ids from the pooled sequence), keys, ledger legs ---
+        List<Transaction> txs = accepted.stream()
+                .map(cmd -> Transaction.builder()
+                        .type(cmd.type())
+                        .idempotencyKey(cmd.idempotencyKey())
+                        .status("SUCCESS")
+                        .build())
+                .toList();
+        txRepo.saveAll(txs);
+        // Flushes the transaction rows (ledger FK) and the balance updates, so wallet versions are bumped
+        txRepo.flush();
+
+        List<KeyRow> keyRows = new ArrayList<>(accepted.size());
+        List<LedgerRow> legs = new ArrayList<>(accepted.size() * 2);
+        for (int i = 0; i < accepted.size(); i++) {
+            TransferCommand cmd = accepted.get(i);
+            long txId = txs.get(i).getId();
+            keyRows.add(new KeyRow(cmd.scopeId(), cmd.idempotencyKey(), txId));
+            legs.add(new LedgerRow(txId, cmd.fromWalletId(), -cmd.amount()));
+            legs.add(new LedgerRow(txId, cmd.toWalletId(), cmd.amount()));
+            outcomes.put(cmd.scopedKey(), Outcome.applied(txId));
+        }
+        idempotencyKeys.insertAll(keyRows);
+        batchRepo.insertLedgerEntries(legs);
+
+        return new BatchResult(outcomes, balances(accepted, locked));
+    }
+
+    /**
+     * Completes queued transfers whose transaction (status PENDING) and idempotency key were created at
+     * submission ({@link TransferJobService}). Same locks and funds checks as {@link #apply}; each
+     * transaction is set to SUCCESS with its ledger legs, or to FAILED.
+     *
+     * @param byTransactionId the transfers by their pending transaction id, in order of application
+     */
+    public BatchResult completePending(Map<Long, TransferCommand> byTransactionId) {
+        Map<String, Outcome> outcomes = new HashMap<>();
+        List<TransferCommand> commands = List.copyOf(byTransactionId.values());
+        Map<Long, Wallet> locked = lockWallets(commands);
+        List<TransferCommand> accepted = checkFundsAndApply(commands, locked, outcomes);
+
+        List<Long> succeeded = new ArrayList<>(accepted.size());
+        List<Long> failed = new ArrayList<>();
+        List<LedgerRow> legs = new ArrayList<>(accepted.size() * 2);
+        byTransactionId.forEach((txId, cmd) -> {
+            if (outcomes.containsKey(cmd.scopedKey())) {
+                failed.add(txId);
+                return;
+            }
+            legs.add(new LedgerRow(txId, cmd.fromWalletId(), -cmd.amount()));
+            legs.add(new LedgerRow(txId, cmd.toWalletId(), cmd.amount()));
+            outcomes.put(cmd.scopedKey(), Outcome.applied(txId));
+            succeeded.add(txId);
+        });
+        // Flushes the balance updates, so wallet versions are bumped
+        walletRepo.flush();
+        if (!succeeded.isEmpty()) txRepo.updateStatus(succeeded, "SUCCESS");
+        if (!failed.isEmpty()) txRepo.updateStatus(failed, "FAILED");
+        batchRepo.insertLedgerEntries(legs);
+        return new BatchResult(outcomes, balances(accepted, locked));
+    }
+
+    /** One lock per touched user wallet, ascending id order. */
+    private Map<Long, Wallet> lockWallets(List<TransferCommand> commands) {
+        Set<Long> toLock = new TreeSet<>();
+        for (TransferCommand cmd : commands) {
+            toLock.addAll(lockingStrategy.walletsToLock(cmd.fromWalletId(), cmd.toWalletId()));
+        }
+        Map<Long, Wallet> locked = new HashMap<>();
+        if (!toLock.isEmpty()) {
+            for (Wallet w : walletRepo.lockWalletsForUpdate(toLock)) locked.put(w.getId(), w);
+        }
+        return locked;
+    }
+
+    /**
+     * Funds checks and running balances against the locked rows, in order. Rejected transfers get a failed
+     * outcome.
+     *
+     * @return the accepted transfers
+     */
+    private static List<TransferCommand> checkFundsAndApply(List<TransferCommand> commands, Map<Long, Wallet> locked,
+                                                            Map<String, Outcome> outcomes) {
+        List<TransferCommand> accepted = new ArrayList<>();
+        for (TransferCommand cmd : commands) {
+            Wallet src = locked.get(cmd.fromWalletId());
+            Wallet dest = locked.get(cmd.toWalletId());
+            if (cmd.requiresFundsCheck() && (src == null || src.getBalance() < cmd.amount())) {
+                outcomes.put(cmd.scopedKey(), Outcome.failed(new WalletException("Insufficient funds", 400)));
+                continue;
+            }
+            if (src != null) src.setBalance(src.getBalance() - cmd.amount());
+            if (dest != null) dest.setBalance(dest.getBalance() + cmd.amount());
+            accepted.add(cmd);
+        }
+        return accepted;
+    }
+
+    /** Final balance of each updated user wallet, once (after flush, so versions are current). */
+    private static List<WalletBalance> balances(List<TransferCommand> accepted, Map<Long, Wallet> locked) {
+        List<WalletBalance> balances = new ArrayList<>();
+        for (TransferCommand cmd : accepted) {
+            for (Long id : List.of(cmd.fromWalletId(), cmd.toWalletId())) {
+                Wallet w = locked.remove(id);
+                if (w != null) balances.add(new WalletBalance(w.getId(), w.getBalance(), w.getVersion()));
+            }
+        }
+        return balances;
+    }
+}
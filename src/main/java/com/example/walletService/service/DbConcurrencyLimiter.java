@@ -0,0 +1,59 @@
+package com.example.walletService.service;
+
+import com.example.walletService.exception.WalletException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of requests doing DB work at once, sized to the Hikari pool. With virtual threads
+ * (spring.threads.virtual.enabled=true) there is no thread pool limiting concurrency any more; without
+ * this gate thousands of virtual threads would queue inside Hikari and time out there. A permit is held
+ * only while a DB transaction runs, never during retry backoff. Waiting for a permit parks the
+ * (virtual) thread; a request that cannot get one within the timeout fails fast with 503.
+ * Metrics: wallet.db.permits.available, wallet.db.permits.rejected.
+ */
+@Component
+public class DbConcurrencyLimiter {
+
+    private final Semaphore permits;
+    private final Counter rejected;
+
+    @Value("${wallet.db.permit-timeout-ms:2000}")
+    private long permitTimeoutMs;
+
+    public DbConcurrencyLimiter(@Value("${wallet.db.max-concurrency:${spring.datasource.hikari.maximum-pool-size:10}}") int maxConcurrency,
+                                MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(maxConcurrency);
+        this.rejected = Counter.builder("wallet.db.permits.rejected").register(meterRegistry);
+        Gauge.builder("wallet.db.permits.available", permits, Semaphore::availablePermits).register(meterRegistry);
+    }
+
+    /**
+     * Runs the DB work while holding a permit.
+     *
+     * @throws WalletException 503 if no permit became free within the timeout
+     */
+    public <T> T call(Supplier<T> work) {
+        try {
+            if (!permits.tryAcquire(permitTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new WalletException("Service busy; retry shortly", 503);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a DB permit", e);
+        }
+        try {
+            return work.get();
+        } finally {
+            permits.release();
+        }
+    }
+}
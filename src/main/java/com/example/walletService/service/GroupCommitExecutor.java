@@ -0,0 +1,167 @@
+package com.example.walletService.service;
+
+import com.example.walletService.cache.BalanceCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Opt-in group commit: collects concurrent transfers for a short window and applies them in one DB
+ * transaction through {@link BatchTransferWriter} (one lock per touched user wallet, multi-row inserts,
+ * one commit). Each caller gets its own outcome: transaction id, existing id for a duplicate key, or its own error (e.g. insufficient funds).
+ * If the batch as a whole fails (lock timeout, concurrent duplicate from another node, ...), every caller
+ * falls back to the single-transfer path, which keeps the usual idempotency and retry semantics.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.group-commit.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class GroupCommitExecutor {
+
+    private final BatchTransferWriter writer;
+    private final BalanceCache balanceCache;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${wallet.group-commit.window-micros:300}")
+    private long windowMicros;
+    @Value("${wallet.group-commit.max-batch:256}")
+    private int maxBatch;
+    @Value("${wallet.group-commit.timeout-ms:5000}")
+    private long timeoutMs;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private volatile boolean running;
+    private Thread flusher;
+
+    private record Pending(TransferCommand cmd, CompletableFuture<TransferResult> result) {}
+
+    /** Completes callers' futures when their batch failed as a whole; they fall back to the single path. */
+    private static final class BatchAbortedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BatchAbortedException(Throwable cause) {
+            super("Group commit batch aborted", cause, false, false);
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        running = true;
+        flusher = Thread.ofPlatform().name("group-commit").daemon().start(this::loop);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        flusher.interrupt();
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        BatchAbortedException aborted = new BatchAbortedException(null);
+        left.forEach(p -> p.result().completeExceptionally(aborted));
+    }
+
+    /**
+     * Submits the transfer to the next batch and waits for it.
+     *
+     * @return the result (applied, or duplicate with the existing transaction id), or null if the batch aborted
+     *         and the caller should use the single-transfer path
+     * @throws WalletException business failure of this transfer (e.g. insufficient funds)
+     */
+    public TransferResult execute(TransferCommand cmd) {
+        if (!running) return null;
+        CompletableFuture<TransferResult> result = new CompletableFuture<>();
+        queue.add(new Pending(cmd, result));
+        try {
+            return result.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BatchAbortedException) return null;
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            // Safe to fall back: if the batch still commits, the unique idempotency key makes the single path return its id
+            log.warn("Group commit did not complete within {} ms; falling back", timeoutMs);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for group commit", e);
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            List<Pending> batch = new ArrayList<>();
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(windowMicros);
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                BatchAbortedException aborted = new BatchAbortedException(e);
+                batch.forEach(p -> p.result().completeExceptionally(aborted));
+                return;
+            }
+            flush(batch);
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        // Duplicate keys inside one batch share the outcome of the first
+        Map<String, List<Pending>> byKey = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            byKey.computeIfAbsent(p.cmd().scopedKey(), k -> new ArrayList<>()).add(p);
+        }
+        List<TransferCommand> commands = byKey.values().stream().map(ps -> ps.get(0).cmd()).toList();
+
+        BatchTransferWriter.BatchResult result;
+        try {
+            result = transactionTemplate.execute(s -> writer.apply(commands));
+        } catch (Exception e) {
+            log.debug("Group commit of {} transfers aborted: {}", batch.size(), e.getMessage());
+            BatchAbortedException aborted = new BatchAbortedException(e);
+            batch.forEach(p -> p.result().completeExceptionally(aborted));
+            return;
+        }
+
+        // --- After commit: caches (final balance per touched wallet, written through), then wake callers ---
+        if (balanceCache.isActive()) {
+            for (WalletBalance b : result.balances()) {
+                balanceCache.put(b.walletId(), b.balance(), b.version());
+            }
+        }
+        Map<String, BatchTransferWriter.Outcome> outcomes = result.outcomes();
+        for (TransferCommand cmd : commands) {
+            BatchTransferWriter.Outcome outcome = outcomes.get(cmd.scopedKey());
+            List<Pending> waiting = byKey.get(cmd.scopedKey());
+            if (outcome.error() != null) {
+                waiting.forEach(p -> p.result().completeExceptionally(outcome.error()));
+                continue;
+            }
+            // Balances are already written through above
+            TransferResult done = outcome.applied()
+                    ? TransferResult.applied(outcome.txId(), List.of())
+                    : TransferResult.duplicate(outcome.txId());
+            waiting.forEach(p -> p.result().complete(done));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.walletService.service;
+
+import com.example.walletService.repository.IdempotencyKeyRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Deletes idempotency keys older than the retention window, in small batches so the purge never holds
+ * long locks or bloats one transaction. Keeps the idempotency_keys primary key index small. After the
+ * window a reused key is processed as a new request, so the retention must exceed any client retry
+ * horizon (and the Redis TTL).
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.idempotency.purge.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyKeyPurgeJob {
+
+    private final IdempotencyKeyRepository idempotencyKeys;
+
+    @Value("${wallet.idempotency.retention-days:7}")
+    private int retentionDays;
+    @Value("${wallet.idempotency.purge.batch-size:10000}")
+    private int batchSize;
+
+    @Scheduled(cron = "${wallet.idempotency.purge.cron:0 */15 * * * *}")
+    public void run() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(retentionDays);
+        long total = 0;
+        try {
+            int deleted;
+            do {
+                deleted = idempotencyKeys.purgeBefore(cutoff, batchSize);
+                total += deleted;
+            } while (deleted == batchSize);
+            if (total > 0) {
+                log.info("Purged {} idempotency key(s) created before {}", total, cutoff);
+            }
+        } catch (Exception e) {
+            log.error("Idempotency key purge failed after {} row(s)", total, e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.walletService.service;
+
+import com.example.walletService.entity.LedgerEntry;
+import com.example.walletService.entity.Transaction;
+import com.example.walletService.entity.Wallet;
+import com.example.walletService.exception.WalletException;
+import com.example.walletService.idempotency.IdempotencyKeyFilter;
+import com.example.walletService.repository.IdempotencyKeyRepository;
+import com.example.walletService.repository.LedgerRepository;
+import com.example.walletService.repository.TransactionRepository;
+import com.example.walletService.repository.WalletRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Default engine: the transfer as a sequence of JPA statements in one app-side transaction.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.transfer.engine", havingValue = "jpa", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JpaTransferEngine implements TransferEngine {
+
+    private final WalletRepository walletRepo;
+    private final TransactionRepository txRepo;
+    private final IdempotencyKeyRepository idempotencyKeys;
+    private final LedgerRepository ledgerRepo;
+    private final TransferLockingStrategy lockingStrategy;
+    private final TransactionTemplate transactionTemplate;
+    private final Optional<IdempotencyKeyFilter> keyFilter;
+    private final RetryBudget retryBudget;
+    private final TransferMetrics metrics;
+
+    /** pessimistic (row lock per transfer) or optimistic (versioned conditional update). */
+    @Value("${wallet.concurrency.mode:pessimistic}")
+    private String concurrencyMode;
+    /** In optimistic mode, wallets with at least this many recent conflicts are locked pessimistically. */
+    @Value("${wallet.concurrency.optimistic.hot-wallet-threshold:5}")
+    private long hotWalletThreshold;
+
+    @Override
+    public TransferResult execute(TransferCommand cmd) {
+        return transactionTemplate.execute(status -> doProcess(cmd));
+    }
+
+    /**
+     * DB path: insert-first to claim the idempotency key (primary key of idempotency_keys); then ledger.
+     * A parallel request with the same key gets a unique violation (DataIntegrityViolationException),
+     * which {@link WalletService} resolves to the existing tx id in a fresh transaction.
+     */
+    private TransferResult doProcess(TransferCommand cmd) {
+        String idempotencyKey = cmd.idempotencyKey();
+        Long fromWalletId = cmd.fromWalletId();
+        Long toWalletId = cmd.toWalletId();
+        String type = cmd.type();
+        metrics.timeCommit(type);
+
+        // --- 2. DB idempotency check (and claim via insert for parallel safety) ---
+        // Skipped for keys the filter has never seen; a missed duplicate fails the insert instead
+        if (keyFilter.isEmpty() || keyFilter.get().mightExist(cmd.scopedKey())) {
+            Optional<Long> existing = metrics.time(TransferMetrics.IDEMPOTENCY_LOOKUP, type,
+                    () -> idempotencyKeys.findTransactionId(cmd.scopeId(), idempotencyKey));
+            if (existing.isPresent()) {
+                return TransferResult.duplicate(existing.get());
+            }
+            keyFilter.ifPresent(IdempotencyKeyFilter::recordFalsePositive);
+        }
+
+        // Inserted as SUCCESS: the row is invisible to others until commit and disappears on rollback,
+        // so a PENDING -> SUCCESS update would only cost a round trip. The id comes from the pooled
+        // sequence at persist, so the key can be claimed right away; the row itself goes out at flush.
+        long phaseStarted = System.nanoTime();
+        Transaction tx = new Transaction();
+        tx.setType(type);
+        tx.setStatus("SUCCESS");
+        tx.setIdempotencyKey(idempotencyKey);
+        txRepo.save(tx);
+        idempotencyKeys.insert(cmd.scopeId(), idempotencyKey, tx.getId());
+        metrics.record(TransferMetrics.KEY_CLAIM, type, System.nanoTime() - phaseStarted);
+
+        // --- Lock only the user wallet(s); ascending id order if more than one (deadlock avoidance) ---
+        // Optimistic mode reads them without a lock instead, unless one is currently hot
+        List<Long> walletIds = lockingStrategy.walletsToLock(fromWalletId, toWalletId);
+        boolean optimistic = useOptimistic(walletIds);
+        Wallet srcWallet = null;
+        Wallet destWallet = null;
+        phaseStarted = System.nanoTime();
+        for (Long walletId : walletIds) {
+            Wallet w = optimistic
+                    ? walletRepo.findById(walletId).orElseThrow(() -> new WalletException("Wallet not found", 404))
+                    : walletRepo.lockWalletForUpdate(walletId);
+            if (walletId.equals(fromWalletId)) srcWallet = w;
+            if (walletId.equals(toWalletId)) destWallet = w;
+        }
+        metrics.record(optimistic ? TransferMetrics.WALLET_READ : TransferMetrics.LOCK_WAIT, type,
+                System.nanoTime() - phaseStarted);
+
+        long amount = cmd.amount();
+
+        // --- Check funds only for spending (stored balance is exact while the row is locked; in optimistic
+        // mode the version check of the update below guarantees the balance read here is still current) ---
+        if (cmd.requiresFundsCheck()) {
+            if (srcWallet == null || srcWallet.getBalance() < amount) {
+                throw new WalletException("Insufficient funds", 400);
+            }
+        }
+
+        // --- Create Ledger Entries (Double Entry) ---
+        // The write phase runs to the flush: that is when the transaction row, legs and balances go out
+        phaseStarted = System.nanoTime();
+        LedgerEntry debit = LedgerEntry.builder()
+                .transactionId(tx.getId())
+                .walletId(fromWalletId)
+                .amount(-amount)
+                .build();
+
+        LedgerEntry credit = LedgerEntry.builder()
+                .transactionId(tx.getId())
+                .walletId(toWalletId)
+                .amount(amount)
+                .build();
+
+        // Both legs go out as one batched (multi-row) INSERT at flush
+        ledgerRepo.saveAll(List.of(debit, credit));
+
+        if (optimistic) {
+            List<WalletBalance> balances = applyOptimistic(srcWallet, destWallet, amount);
+            metrics.record(TransferMetrics.WRITE, type, System.nanoTime() - phaseStarted);
+            return TransferResult.applied(tx.getId(), balances);
+        }
+
+        // --- Running balances of locked wallets; system side is append-only ---
+        List<Wallet> updated = new ArrayList<>(2);
+        if (srcWallet != null) {
+            srcWallet.setBalance(srcWallet.getBalance() - amount);
+            updated.add(srcWallet);
+        }
+        if (destWallet != null) {
+            destWallet.setBalance(destWallet.getBalance() + amount);
+            updated.add(destWallet);
+        }
+
+        // Flush now (instead of at commit) so the bumped wallet versions are known for write-through caching
+        walletRepo.flush();
+        metrics.record(TransferMetrics.WRITE, type, System.nanoTime() - phaseStarted);
+        List<WalletBalance> balances = updated.stream()
+                .map(w -> new WalletBalance(w.getId(), w.getBalance(), w.getVersion()))
+                .toList();
+        return TransferResult.applied(tx.getId(), balances);
+    }
+
+    private boolean useOptimistic(List<Long> walletIds) {
+        if (!"optimistic".equals(concurrencyMode)) return false;
+        for (Long id : walletIds) {
+            if (retryBudget.lockFailures(id) >= hotWalletThreshold) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Conditional balance updates (version unchanged, balance stays non-negative). A concurrent change
+     * makes the update match no row; the transaction then rolls back and the retry loop in
+     * {@link WalletService} runs it again with fresh reads.
+     */
+    private List<WalletBalance> applyOptimistic(Wallet srcWallet, Wallet destWallet, long amount) {
+        List<WalletBalance> balances = new ArrayList<>(2);
+        if (srcWallet != null) balances.add(applyDelta(srcWallet, -amount));
+        if (destWallet != null) balances.add(applyDelta(destWallet, amount));
+        return balances;
+    }
+
+    private WalletBalance applyDelta(Wallet w, long delta) {
+        if (walletRepo.applyDeltaIfVersion(w.getId(), delta, w.getVersion()) == 0) {
+            throw new OptimisticLockingFailureException("Wallet " + w.getId() + " changed concurrently");
+        }
+        return new WalletBalance(w.getId(), w.getBalance() + delta, w.getVersion() + 1);
+    }
+}
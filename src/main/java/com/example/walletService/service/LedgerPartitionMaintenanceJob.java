@@ -0,0 +1,60 @@
+package com.example.walletService.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+
+/**
+ * Keeps monthly ledger_entries partitions created ahead of time and, if a retention is configured,
+ * detaches partitions older than the retention window (see V7 migration). Detached partitions keep
+ * their per-wallet totals in ledger_archive_totals, so balances stay exact.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.ledger.partitions.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerPartitionMaintenanceJob {
+
+    private final JdbcTemplate jdbc;
+
+    @Value("${wallet.ledger.partitions.months-ahead:3}")
+    private int monthsAhead;
+    /** 0 = keep all partitions attached */
+    @Value("${wallet.ledger.partitions.retention-months:0}")
+    private int retentionMonths;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        run();
+    }
+
+    @Scheduled(cron = "${wallet.ledger.partitions.cron:0 0 3 * * *}")
+    public void run() {
+        try {
+            Integer created = jdbc.queryForObject("SELECT ensure_ledger_partitions(current_date, ?)",
+                    Integer.class, monthsAhead);
+            if (created != null && created > 0) {
+                log.info("Created {} ledger partition(s)", created);
+            }
+            if (retentionMonths > 0) {
+                LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(retentionMonths);
+                Integer detached = jdbc.queryForObject("SELECT archive_ledger_partitions(?)",
+                        Integer.class, Date.valueOf(cutoff));
+                if (detached != null && detached > 0) {
+                    log.info("Detached {} ledger partition(s) ending before {}", detached, cutoff);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Ledger partition maintenance failed", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.walletService.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * /actuator/lockcontention: the currently most contended wallets (lock failures and shed retries,
+ * decayed over time), to spot hot wallets. Optional query parameter {@code limit} (default 20).
+ */
+@Component
+@Endpoint(id = "lockcontention")
+@RequiredArgsConstructor
+public class LockContentionEndpoint {
+
+    private final RetryBudget retryBudget;
+
+    @ReadOperation
+    public List<RetryBudget.WalletContention> top(@Nullable Integer limit) {
+        return retryBudget.topContended(limit == null ? 20 : Math.min(limit, 1000));
+    }
+}
@@ -1,42 +1,67 @@
 package com.example.walletService.service;
 
-import org.springframework.dao.CannotAcquireLockException;
-import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
 
+import jakarta.persistence.OptimisticLockException;
 import jakarta.persistence.PessimisticLockException;
+import java.sql.SQLException;
 import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Detects lock timeout / deadlock and computes backoff for retries.
+ * Detects lock timeout / deadlock / serialization / optimistic conflicts and computes backoff for retries.
  */
 public final class LockRetryHelper {
 
+    /** PostgreSQL SQLSTATEs worth retrying: deadlock_detected, lock_not_available, serialization_failure. */
+    static final String DEADLOCK_DETECTED = "40P01";
+    static final String LOCK_NOT_AVAILABLE = "55P03";
+    static final String SERIALIZATION_FAILURE = "40001";
+
     private LockRetryHelper() {}
 
-    /** Returns true if the exception indicates lock timeout or deadlock (retryable). */
+    /**
+     * Returns true if the exception (or a cause) is a lock timeout, deadlock, serialization failure or
+     * optimistic version conflict.
+     * Classifies by exception type and SQLSTATE only; messages are never inspected.
+     */
     public static boolean isRetryable(Throwable t) {
-        if (t == null) return false;
-        if (t instanceof PessimisticLockException
-                || t instanceof CannotAcquireLockException
-                || t instanceof DeadlockLoserDataAccessException) {
-            return true;
+        for (Throwable c = t; c != null; c = c.getCause() == c ? null : c.getCause()) {
+            if (c instanceof PessimisticLockException || c instanceof PessimisticLockingFailureException) {
+                return true;
+            }
+            // Optimistic mode: the wallet changed between read and conditional update
+            if (c instanceof OptimisticLockException || c instanceof OptimisticLockingFailureException) {
+                return true;
+            }
+            if (c instanceof SQLException sql) {
+                String state = sql.getSQLState();
+                if (DEADLOCK_DETECTED.equals(state) || LOCK_NOT_AVAILABLE.equals(state)
+                        || SERIALIZATION_FAILURE.equals(state)) {
+                    return true;
+                }
+            }
         }
-        String msg = t.getMessage();
-        if (msg != null) {
-            String lower = msg.toLowerCase();
-            if (lower.contains("deadlock") || lower.contains("lock timeout")
-                    || lower.contains("could not obtain lock") || lower.contains("lock wait timeout")
-                    || lower.contains("canceling statement due to lock timeout")) {
+        return false;
+    }
+
+    /** True if the exception (or a cause) is an optimistic version conflict, which waited on no lock. */
+    public static boolean isOptimisticConflict(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause() == c ? null : c.getCause()) {
+            if (c instanceof OptimisticLockException || c instanceof OptimisticLockingFailureException) {
                 return true;
             }
         }
-        return isRetryable(t.getCause());
+        return false;
     }
 
-    /** Exponential backoff with jitter: baseMs * 2^attempt + random 0..baseMs. */
-    public static long backoffMs(int attempt, int baseBackoffMs) {
-        long delay = (long) baseBackoffMs * (1L << Math.min(attempt, 10));
-        long jitter = ThreadLocalRandom.current().nextLong(0, baseBackoffMs + 1);
-        return delay + jitter;
+    /**
+     * Exponential backoff with "equal jitter": d = min(cap, unit * 2^attempt), sleep d/2 + random 0..d/2.
+     * The unit adapts to contention (see {@link RetryBudget#backoffUnitMs()}).
+     */
+    public static long backoffMs(int attempt, long unitMs, long capMs) {
+        long delay = Math.min(capMs, unitMs * (1L << Math.min(attempt, 10)));
+        long half = Math.max(1, delay / 2);
+        return half + ThreadLocalRandom.current().nextLong(0, half + 1);
     }
 }
@@ -0,0 +1,72 @@
+package com.example.walletService.service;
+
+import com.example.walletService.exception.WalletException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the whole transfer server-side as one call to the wallet_transfer PL/pgSQL function
+ * (V6, V8, V9 migrations): a single round trip and a single autocommit transaction.
+ * Which wallets get locked is still decided by {@link TransferLockingStrategy}.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.transfer.engine", havingValue = "native")
+@RequiredArgsConstructor
+public class NativeTransferEngine implements TransferEngine {
+
+    private static final String SQL = "SELECT result_status AS status, result_tx_id AS transaction_id,"
+            + " from_balance, from_version, to_balance, to_version"
+            + " FROM wallet_transfer(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+    private final TransferLockingStrategy lockingStrategy;
+    private final TransferMetrics metrics;
+
+    private record Row(String status, Long transactionId, List<WalletBalance> balances) {}
+
+    @Override
+    public TransferResult execute(TransferCommand cmd) {
+        // Lookup, locks, inserts and commit are one server-side call, timed as a single phase
+        Row row = metrics.time(TransferMetrics.TRANSFER_FUNCTION, cmd.type(), () -> call(cmd));
+        if (row == null) {
+            throw new IllegalStateException("wallet_transfer returned no row");
+        }
+        return switch (row.status()) {
+            case "OK" -> TransferResult.applied(row.transactionId(), row.balances());
+            case "DUPLICATE" -> TransferResult.duplicate(row.transactionId());
+            case "INSUFFICIENT_FUNDS" -> throw new WalletException("Insufficient funds", 400);
+            case "KEY_COLLISION" ->
+                    throw new WalletException("Idempotency key collides with another key; use a different key", 409);
+            default -> throw new IllegalStateException("Unknown wallet_transfer status: " + row.status());
+        };
+    }
+
+    private Row call(TransferCommand cmd) {
+        return jdbc.queryForObject(SQL, (rs, i) -> {
+                    List<WalletBalance> balances = new ArrayList<>(2);
+                    Long fromBalance = rs.getObject("from_balance", Long.class);
+                    if (fromBalance != null) {
+                        balances.add(new WalletBalance(cmd.fromWalletId(), fromBalance, rs.getLong("from_version")));
+                    }
+                    Long toBalance = rs.getObject("to_balance", Long.class);
+                    if (toBalance != null) {
+                        balances.add(new WalletBalance(cmd.toWalletId(), toBalance, rs.getLong("to_version")));
+                    }
+                    return new Row(rs.getString("status"), rs.getObject("transaction_id", Long.class), balances);
+                },
+                cmd.idempotencyKey(),
+                cmd.scopeId(),
+                cmd.type(),
+                cmd.fromWalletId(),
+                cmd.toWalletId(),
+                cmd.amount(),
+                cmd.requiresFundsCheck(),
+                lockingStrategy.isLocked(cmd.fromWalletId()),
+                lockingStrategy.isLocked(cmd.toWalletId()));
+    }
+}
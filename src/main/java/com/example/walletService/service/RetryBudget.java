@@ -0,0 +1,148 @@
+package com.example.walletService.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Retry budget and contention tracking for lock failures.
+ * <ul>
+ *   <li>Budget: every retry takes a token from a global bucket and from the bucket of each locked wallet.
+ *       When either is empty the request is shed (503) instead of retried, so a lock storm on one hot
+ *       wallet, or on the whole database, is not amplified by retries.</li>
+ *   <li>Adaptive backoff: an EWMA of how long failed attempts waited on locks sets the backoff unit
+ *       (never below the configured base), so backoff grows with the observed lock wait. It is halved
+ *       with the counters, so backoff falls back to the base once lock failures stop.</li>
+ *   <li>Per-wallet contention counters (lock failures, shed retries), decayed by half every minute so only
+ *       currently hot wallets stay tracked; see {@link #topContended(int)} and the lockcontention
+ *       actuator endpoint.</li>
+ * </ul>
+ * Metrics: wallet.retry.attempts (result=retried|shed), wallet.lock.wait.ewma.ms.
+ */
+@Component
+public class RetryBudget {
+
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final TokenBucket global;
+    private final ConcurrentHashMap<Long, WalletStats> wallets = new ConcurrentHashMap<>();
+    private final AtomicLong lockWaitEwmaMicros = new AtomicLong();
+    private final Counter retried;
+    private final Counter shed;
+
+    @Value("${wallet.concurrency.retry.base-backoff-ms:50}")
+    private long baseBackoffMs;
+    @Value("${wallet.concurrency.retry.max-backoff-ms:1000}")
+    private long maxBackoffMs;
+    @Value("${wallet.concurrency.retry.budget.wallet.rate-per-sec:5}")
+    private double walletRatePerSec;
+    @Value("${wallet.concurrency.retry.budget.wallet.burst:10}")
+    private double walletBurst;
+
+    /** Contention snapshot of one wallet. */
+    public record WalletContention(long walletId, long lockFailures, long shedRetries) {}
+
+    private final class WalletStats {
+        final AtomicLong lockFailures = new AtomicLong();
+        final AtomicLong shedRetries = new AtomicLong();
+        final TokenBucket bucket = new TokenBucket(walletRatePerSec, walletBurst);
+    }
+
+    public RetryBudget(MeterRegistry meterRegistry,
+                       @Value("${wallet.concurrency.retry.budget.global.rate-per-sec:100}") double globalRatePerSec,
+                       @Value("${wallet.concurrency.retry.budget.global.burst:200}") double globalBurst) {
+        this.global = new TokenBucket(globalRatePerSec, globalBurst);
+        this.retried = Counter.builder("wallet.retry.attempts").tag("result", "retried").register(meterRegistry);
+        this.shed = Counter.builder("wallet.retry.attempts").tag("result", "shed").register(meterRegistry);
+        Gauge.builder("wallet.lock.wait.ewma.ms", lockWaitEwmaMicros, v -> v.get() / 1000d).register(meterRegistry);
+    }
+
+    /**
+     * Records a failed attempt on the given (locked) wallets and how long it waited on locks.
+     *
+     * @param waitedNanos time spent in the DB transaction; 0 if no lock was waited on (optimistic conflict),
+     *                    which counts the failure without feeding the lock wait EWMA
+     */
+    public void recordLockFailure(List<Long> walletIds, long waitedNanos) {
+        for (Long id : walletIds) {
+            wallets.computeIfAbsent(id, k -> new WalletStats()).lockFailures.incrementAndGet();
+        }
+        if (waitedNanos <= 0) return;
+        long sample = waitedNanos / 1000;
+        lockWaitEwmaMicros.getAndUpdate(prev -> prev == 0 ? sample : (long) (prev + EWMA_ALPHA * (sample - prev)));
+    }
+
+    /**
+     * Takes one retry token from the global bucket and from each wallet's bucket.
+     *
+     * @return false if the retry must be shed (no token was kept)
+     */
+    public boolean tryAcquireRetry(List<Long> walletIds) {
+        if (!global.tryAcquire()) {
+            shed(walletIds);
+            return false;
+        }
+        for (int i = 0; i < walletIds.size(); i++) {
+            WalletStats stats = wallets.computeIfAbsent(walletIds.get(i), k -> new WalletStats());
+            if (!stats.bucket.tryAcquire()) {
+                for (int j = 0; j < i; j++) wallets.get(walletIds.get(j)).bucket.giveBack();
+                global.giveBack();
+                shed(walletIds);
+                return false;
+            }
+        }
+        retried.increment();
+        return true;
+    }
+
+    /** Recent (decayed) lock failures of the wallet; 0 if it is not tracked. */
+    public long lockFailures(Long walletId) {
+        WalletStats stats = wallets.get(walletId);
+        return stats == null ? 0 : stats.lockFailures.get();
+    }
+
+    /** Backoff unit: the observed lock wait (EWMA), at least the configured base. */
+    public long backoffUnitMs() {
+        return Math.max(baseBackoffMs, lockWaitEwmaMicros.get() / 1000);
+    }
+
+    public long backoffMs(int attempt) {
+        return LockRetryHelper.backoffMs(attempt, backoffUnitMs(), maxBackoffMs);
+    }
+
+    /** Most contended wallets, by lock failures (decayed). */
+    public List<WalletContention> topContended(int limit) {
+        return wallets.entrySet().stream()
+                .map(e -> new WalletContention(e.getKey(), e.getValue().lockFailures.get(), e.getValue().shedRetries.get()))
+                .filter(c -> c.lockFailures() > 0 || c.shedRetries() > 0)
+                .sorted(Comparator.comparingLong(WalletContention::lockFailures).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.concurrency.retry.contention-decay-ms:60000}")
+    public void decay() {
+        lockWaitEwmaMicros.updateAndGet(v -> v / 2);
+        wallets.entrySet().removeIf(e -> {
+            WalletStats s = e.getValue();
+            long failures = s.lockFailures.updateAndGet(v -> v / 2);
+            long shedCount = s.shedRetries.updateAndGet(v -> v / 2);
+            return failures == 0 && shedCount == 0 && s.bucket.isFull();
+        });
+    }
+
+    private void shed(List<Long> walletIds) {
+        shed.increment();
+        for (Long id : walletIds) {
+            wallets.computeIfAbsent(id, k -> new WalletStats()).shedRetries.incrementAndGet();
+        }
+    }
+}
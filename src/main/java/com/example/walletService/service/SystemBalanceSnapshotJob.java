@@ -0,0 +1,47 @@
+package com.example.walletService.service;
+
+import com.example.walletService.repository.LedgerRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Keeps system wallet balances cheap to read. System wallets are append-only, so their balance is a ledger
+ * sum; instead of summing the whole history on every read (system balance endpoint, shard rebalancing,
+ * reconciliation), reads take the system_wallet_balances snapshot and add the entries created since.
+ * This job folds those entries into the snapshot, so a read covers about {@code lag-seconds} plus one
+ * interval of entries, whatever the size of the ledger.
+ * <p>
+ * Entries carry the app clock at insert, and a transaction can commit after entries of later ones. The
+ * snapshot therefore stops {@code lag-seconds} short of now: an entry that commits later than that after
+ * its created_at would be missed by the snapshot, so the lag must stay well above the longest transfer
+ * transaction and any clock skew between instances.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SystemBalanceSnapshotJob {
+
+    private final LedgerRepository ledgerRepo;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${wallet.system-wallets.snapshot.lag-seconds:600}")
+    private long lagSeconds;
+
+    @Scheduled(fixedDelayString = "${wallet.system-wallets.snapshot.interval-ms:60000}")
+    public void run() {
+        LocalDateTime cutoff = LocalDateTime.now().minusSeconds(lagSeconds);
+        try {
+            Integer folded = transactionTemplate.execute(s -> ledgerRepo.foldSystemBalances(cutoff));
+            log.debug("Folded {} system wallet balance snapshot(s) up to {}", folded, cutoff);
+        } catch (Exception e) {
+            // Reads stay exact, they just scan more entries until the next run
+            log.error("System wallet balance snapshot failed", e);
+        }
+    }
+}
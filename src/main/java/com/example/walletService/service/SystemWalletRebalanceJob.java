@@ -0,0 +1,72 @@
+package com.example.walletService.service;
+
+import com.example.walletService.repository.LedgerRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Levels the balances of system wallet shards so that each shard carries its share of the
+ * system wallet's funds. Moves go through {@link WalletService#rebalance} as REBALANCE transfers,
+ * so the ledger still explains every change. Only active when shards are configured.
+ */
+@Component
+@ConditionalOnExpression("${wallet.system-wallets.shards:1} > 1")
+@RequiredArgsConstructor
+@Slf4j
+public class SystemWalletRebalanceJob {
+
+    private final SystemWalletShards systemWallets;
+    private final LedgerRepository ledgerRepo;
+    private final WalletService walletService;
+
+    @Scheduled(fixedDelayString = "${wallet.system-wallets.rebalance-interval-ms:60000}")
+    public void run() {
+        for (Long root : SystemWalletShards.ROOT_WALLETS) {
+            try {
+                rebalance(root);
+            } catch (Exception e) {
+                log.warn("Rebalance of system wallet {} failed: {}", root, e.getMessage());
+            }
+        }
+    }
+
+    void rebalance(Long root) {
+        List<Long> shards = systemWallets.shardsOf(root);
+        if (shards.size() < 2) return;
+        // System wallets are append-only, so read balances from the ledger (snapshot plus recent entries)
+        long[] balances = new long[shards.size()];
+        long total = 0;
+        for (int k = 0; k < shards.size(); k++) {
+            balances[k] = ledgerRepo.getSystemBalance(shards.get(k));
+            total += balances[k];
+        }
+        long target = Math.floorDiv(total, shards.size());
+
+        // Greedy: pair shards above target with shards below target
+        List<long[]> surplus = new ArrayList<>();
+        List<long[]> deficit = new ArrayList<>();
+        for (int k = 0; k < shards.size(); k++) {
+            long diff = balances[k] - target;
+            if (diff > 0) surplus.add(new long[]{shards.get(k), diff});
+            else if (diff < 0) deficit.add(new long[]{shards.get(k), -diff});
+        }
+        String run = root + ":" + System.currentTimeMillis();
+        int i = 0, j = 0;
+        while (i < surplus.size() && j < deficit.size()) {
+            long[] from = surplus.get(i);
+            long[] to = deficit.get(j);
+            long amount = Math.min(from[1], to[1]);
+            walletService.rebalance(from[0], to[0], amount, "rebalance:" + run + ":" + from[0] + ":" + to[0]);
+            from[1] -= amount;
+            to[1] -= amount;
+            if (from[1] == 0) i++;
+            if (to[1] == 0) j++;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.walletService.service;
+
+import com.example.walletService.entity.Wallet;
+import com.example.walletService.repository.LedgerRepository;
+import com.example.walletService.repository.WalletRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Splits each system wallet (Treasury, Bonus Pool, Revenue) into N shard wallets so that transfers
+ * of one type are not serialized on a single row. The root wallet is shard 0; shards 1..N-1 are
+ * created on startup if missing. Balances of a system wallet are the sum over root + shards.
+ * System wallets are never row-locked by transfers; wallets.balance for them is a snapshot
+ * refreshed by {@link BalanceReconciliationJob}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SystemWalletShards {
+
+    public static final Long TREASURY_WALLET = 1L;
+    public static final Long BONUS_WALLET = 2L;
+    public static final Long REVENUE_WALLET = 3L;
+    public static final List<Long> ROOT_WALLETS = List.of(TREASURY_WALLET, BONUS_WALLET, REVENUE_WALLET);
+
+    private final WalletRepository walletRepo;
+    private final LedgerRepository ledgerRepo;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${wallet.system-wallets.shards:1}")
+    private int shardCount;
+    /** hash (by user wallet id, so one user sticks to one shard) or round-robin */
+    @Value("${wallet.system-wallets.shard-selection:hash}")
+    private String selection;
+
+    private final Map<Long, long[]> shardsByRoot = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> roundRobin = new ConcurrentHashMap<>();
+    private final Set<Long> allShardIds = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void init() {
+        if (shardCount < 1) {
+            throw new IllegalStateException("wallet.system-wallets.shards must be >= 1");
+        }
+        for (Long root : ROOT_WALLETS) {
+            long[] shards = shardCount == 1 ? new long[]{root} : provision(root);
+            shardsByRoot.put(root, shards);
+            for (long id : shards) allShardIds.add(id);
+            roundRobin.put(root, new AtomicLong());
+        }
+    }
+
+    /**
+     * Picks the shard wallet to use for the given root system wallet.
+     *
+     * @param rootWalletId  Treasury / Bonus Pool / Revenue wallet id
+     * @param userWalletId  the user side of the transfer (hash key)
+     */
+    public Long select(Long rootWalletId, Long userWalletId) {
+        long[] shards = shardsByRoot.get(rootWalletId);
+        if (shards == null || shards.length == 1) return rootWalletId;
+        int idx;
+        if ("round-robin".equals(selection)) {
+            idx = (int) Math.floorMod(roundRobin.get(rootWalletId).getAndIncrement(), (long) shards.length);
+        } else {
+            idx = Math.floorMod(Long.hashCode(userWalletId * 0x9E3779B97F4A7C15L), shards.length);
+        }
+        return shards[idx];
+    }
+
+    /** Shard wallet ids in use for the root (root first). */
+    public List<Long> shardsOf(Long rootWalletId) {
+        long[] shards = shardsByRoot.get(rootWalletId);
+        List<Long> ids = new ArrayList<>();
+        if (shards != null) for (long id : shards) ids.add(id);
+        return ids;
+    }
+
+    public boolean isRoot(Long walletId) {
+        return shardsByRoot.containsKey(walletId);
+    }
+
+    /** True for a root system wallet or any of its shards. */
+    public boolean isSystemWallet(Long walletId) {
+        return allShardIds.contains(walletId);
+    }
+
+    /**
+     * Balance of the system wallet aggregated across all of its shards. System wallets are append-only
+     * (see {@link TransferLockingStrategy}), so this reads the ledger rather than wallets.balance: each
+     * shard's snapshot plus the entries since ({@link SystemBalanceSnapshotJob}).
+     */
+    public Long aggregatedBalance(Long rootWalletId) {
+        return ledgerRepo.getAggregatedBalance(rootWalletId);
+    }
+
+    private long[] provision(Long root) {
+        long[] ids = new long[shardCount];
+        ids[0] = root;
+        for (int shardNo = 1; shardNo < shardCount; shardNo++) {
+            ids[shardNo] = findOrCreateShard(root, shardNo);
+        }
+        log.info("System wallet {} sharded into {}", root, shardCount);
+        return ids;
+    }
+
+    private long findOrCreateShard(Long root, int shardNo) {
+        Long existing = findShard(root, shardNo);
+        if (existing != null) return existing;
+        try {
+            return transactionTemplate.execute(s -> {
+                Wallet rootWallet = walletRepo.findById(root)
+                        .orElseThrow(() -> new IllegalStateException("System wallet " + root + " not found"));
+                Wallet shard = Wallet.builder()
+                        .assetTypeId(rootWallet.getAssetTypeId())
+                        .parentWalletId(root)
+                        .shardNo(shardNo)
+                        .balance(0L)
+                        .createdAt(LocalDateTime.now())
+                        .build();
+                return walletRepo.saveAndFlush(shard).getId();
+            });
+        } catch (DataIntegrityViolationException e) {
+            // Another instance created it concurrently
+            Long created = findShard(root, shardNo);
+            if (created == null) throw e;
+            return created;
+        }
+    }
+
+    private Long findShard(Long root, int shardNo) {
+        return walletRepo.findByParentWalletIdOrderByShardNo(root).stream()
+                .filter(w -> w.getShardNo() == shardNo)
+                .map(Wallet::getId)
+                .findFirst()
+                .orElse(null);
+    }
+}
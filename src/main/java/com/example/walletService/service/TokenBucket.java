@@ -0,0 +1,60 @@
+package com.example.walletService.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Time-refilled token bucket: {@code ratePerSec} tokens per second up to {@code burst}. Starts full.
+ */
+final class TokenBucket {
+
+    private final double ratePerNano;
+    private final double burst;
+    private final ReentrantLock lock = new ReentrantLock();
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double ratePerSec, double burst) {
+        this.ratePerNano = ratePerSec / 1_000_000_000d;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    boolean tryAcquire() {
+        lock.lock();
+        try {
+            refill();
+            if (tokens < 1) return false;
+            tokens -= 1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns a token taken by {@link #tryAcquire()} that was not used. */
+    void giveBack() {
+        lock.lock();
+        try {
+            tokens = Math.min(burst, tokens + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isFull() {
+        lock.lock();
+        try {
+            refill();
+            return tokens >= burst;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.walletService.service;
+
+import com.example.walletService.repository.IdempotencyKeyRepository;
+
+/**
+ * One resolved transfer: wallet ids are final (user wallet resolved, system shard selected).
+ *
+ * @param scopeId scope of the idempotency key: the user id, or {@link #SYSTEM_SCOPE}
+ * @param type    TOPUP, BONUS, SPEND or REBALANCE
+ */
+public record TransferCommand(
+        String idempotencyKey,
+        long scopeId,
+        String type,
+        Long fromWalletId,
+        Long toWalletId,
+        long amount
+) {
+
+    /** Scope of idempotency keys of system-initiated transfers (REBALANCE). */
+    public static final long SYSTEM_SCOPE = 0;
+
+    /** Only SPEND debits a user wallet and needs a funds check. */
+    public boolean requiresFundsCheck() {
+        return "SPEND".equals(type);
+    }
+
+    public IdempotencyKeyRepository.Key key() {
+        return new IdempotencyKeyRepository.Key(scopeId, idempotencyKey);
+    }
+
+    /** The key with its scope ("scope:key"), for caches and in-memory maps. */
+    public String scopedKey() {
+        return key().scoped();
+    }
+}
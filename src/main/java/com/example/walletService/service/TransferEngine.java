@@ -0,0 +1,14 @@
+package com.example.walletService.service;
+
+/**
+ * Executes one transfer (idempotency claim, locking, funds check, double-entry, running balance)
+ * in its own DB transaction. Selected by wallet.transfer.engine (jpa | native).
+ * Lock timeouts / deadlocks propagate as exceptions and are retried by {@link WalletService}.
+ */
+public interface TransferEngine {
+
+    /**
+     * @throws com.example.walletService.exception.WalletException 400 on insufficient funds
+     */
+    TransferResult execute(TransferCommand cmd);
+}
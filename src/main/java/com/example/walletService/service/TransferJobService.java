@@ -0,0 +1,108 @@
+package com.example.walletService.service;
+
+import com.example.walletService.dto.TransactionRequest;
+import com.example.walletService.dto.TransferStatusResponse;
+import com.example.walletService.entity.Transaction;
+import com.example.walletService.exception.WalletException;
+import com.example.walletService.idempotency.IdempotencyKeyFilter;
+import com.example.walletService.repository.IdempotencyKeyRepository;
+import com.example.walletService.repository.TransactionRepository;
+import com.example.walletService.repository.TransferJobRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Optional;
+
+/**
+ * Async transfer submission: the transfer is queued in transfer_jobs and answered right away, so request
+ * latency no longer includes lock waits or retry backoff. One short DB transaction creates the transaction
+ * row (PENDING), claims the idempotency key for it and inserts the job; {@link TransferJobWorker} applies
+ * it later. Because the key is claimed at submission, a retry with the same key returns the same transaction
+ * and balances only change once; a sync retry reports its status (202 while PENDING, the error if FAILED).
+ */
+@Service
+@ConditionalOnProperty(name = "wallet.async.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class TransferJobService {
+
+    private final WalletIdResolver walletIds;
+    private final SystemWalletShards systemWallets;
+    private final TransactionRepository txRepo;
+    private final IdempotencyKeyRepository idempotencyKeys;
+    private final TransferJobRepository jobs;
+    private final TransactionTemplate transactionTemplate;
+    private final DbConcurrencyLimiter dbLimiter;
+    private final Optional<IdempotencyKeyFilter> keyFilter;
+
+    public TransferStatusResponse topup(TransactionRequest req, String idempotencyKey) {
+        Long userWalletId = walletIds.resolve(req.userId());
+        Long treasury = systemWallets.select(SystemWalletShards.TREASURY_WALLET, userWalletId);
+        return submit(new TransferCommand(idempotencyKey, req.userId(), "TOPUP", treasury, userWalletId, req.amount()),
+                userWalletId);
+    }
+
+    public TransferStatusResponse bonus(TransactionRequest req, String idempotencyKey) {
+        Long userWalletId = walletIds.resolve(req.userId());
+        Long bonusPool = systemWallets.select(SystemWalletShards.BONUS_WALLET, userWalletId);
+        return submit(new TransferCommand(idempotencyKey, req.userId(), "BONUS", bonusPool, userWalletId, req.amount()),
+                userWalletId);
+    }
+
+    /** The funds check happens when the job runs; insufficient funds then fails the transaction. */
+    public TransferStatusResponse spend(TransactionRequest req, String idempotencyKey) {
+        Long userWalletId = walletIds.resolve(req.userId());
+        Long revenue = systemWallets.select(SystemWalletShards.REVENUE_WALLET, userWalletId);
+        return submit(new TransferCommand(idempotencyKey, req.userId(), "SPEND", userWalletId, revenue, req.amount()),
+                userWalletId);
+    }
+
+    /**
+     * Current state of a transaction; sync transfers are always SUCCESS.
+     *
+     * @throws WalletException 404 if there is no such transaction
+     */
+    public TransferStatusResponse status(Long transactionId) {
+        return dbLimiter.call(() -> jobs.findStatus(transactionId))
+                .map(s -> new TransferStatusResponse(transactionId, s.status(), s.error()))
+                .orElseThrow(() -> new WalletException("Transaction not found", 404));
+    }
+
+    private TransferStatusResponse submit(TransferCommand cmd, Long userWalletId) {
+        try {
+            return dbLimiter.call(() -> transactionTemplate.execute(s -> enqueue(cmd, userWalletId)));
+        } catch (DataIntegrityViolationException e) {
+            // The key was claimed concurrently (by an async or sync request): report that transaction
+            return dbLimiter.call(() -> existing(cmd)).orElseThrow(() -> e);
+        }
+    }
+
+    private TransferStatusResponse enqueue(TransferCommand cmd, Long userWalletId) {
+        // Skipped for keys the filter has never seen; a missed duplicate fails the key insert instead
+        if (keyFilter.isEmpty() || keyFilter.get().mightExist(cmd.scopedKey())) {
+            Optional<TransferStatusResponse> existing = existing(cmd);
+            if (existing.isPresent()) return existing.get();
+            keyFilter.ifPresent(IdempotencyKeyFilter::recordFalsePositive);
+        }
+
+        // Flushed right away: the job references the transaction row
+        Transaction tx = txRepo.saveAndFlush(Transaction.builder()
+                .type(cmd.type())
+                .idempotencyKey(cmd.idempotencyKey())
+                .status("PENDING")
+                .build());
+        idempotencyKeys.insert(cmd.scopeId(), cmd.idempotencyKey(), tx.getId());
+        jobs.insert(tx.getId(), userWalletId, cmd.fromWalletId(), cmd.toWalletId(), cmd.amount(), cmd.type(),
+                cmd.scopeId(), cmd.idempotencyKey());
+        return TransferStatusResponse.pending(tx.getId());
+    }
+
+    private Optional<TransferStatusResponse> existing(TransferCommand cmd) {
+        return idempotencyKeys.findTransactionId(cmd.scopeId(), cmd.idempotencyKey())
+                .map(txId -> jobs.findStatus(txId)
+                        .map(s -> new TransferStatusResponse(txId, s.status(), s.error()))
+                        .orElseGet(() -> new TransferStatusResponse(txId, "SUCCESS", null)));
+    }
+}
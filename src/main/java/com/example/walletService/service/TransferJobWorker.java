@@ -0,0 +1,207 @@
+package com.example.walletService.service;
+
+import com.example.walletService.cache.BalanceCache;
+import com.example.walletService.repository.TransactionRepository;
+import com.example.walletService.repository.TransferJobRepository;
+import com.example.walletService.repository.TransferJobRepository.TransferJob;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies queued async transfers ({@link TransferJobService}). Each of {@code wallet.async.workers} threads
+ * claims the ready jobs of one user wallet under a per-wallet advisory lock, skipping wallets that another
+ * worker holds, so workers never wait on each other and a wallet's jobs are applied in submission order
+ * (see {@link TransferJobRepository#claimWalletGroup}). Claims skip whole wallets rather than single job
+ * rows (SKIP LOCKED), which could pick a wallet's later job while an earlier one is still locked and break
+ * that order. A group is applied through {@link BatchTransferWriter#completePending}: one wallet row lock,
+ * then each transaction becomes SUCCESS (ledger legs written) or FAILED (insufficient funds), and the jobs
+ * are deleted in the same DB transaction. A crash before commit leaves the jobs queued.
+ * <p>
+ * If the group's transaction fails (lock timeout, deadlock, ...), its jobs are retried with exponential
+ * backoff and failed for good after {@code wallet.async.max-attempts}. With {@code wallet.async.workers=0}
+ * the instance only accepts submissions.
+ * Metrics: wallet.async.jobs (type, result: success, failed, deferred), wallet.async.job.latency (queued
+ * to applied).
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.async.enabled", havingValue = "true")
+@RequiredArgsConstructor
+@Slf4j
+public class TransferJobWorker {
+
+    private final TransferJobRepository jobs;
+    private final TransactionRepository txRepo;
+    private final BatchTransferWriter writer;
+    private final BalanceCache balanceCache;
+    private final TransactionTemplate transactionTemplate;
+    private final DbConcurrencyLimiter dbLimiter;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${wallet.async.workers:4}")
+    private int workers;
+    @Value("${wallet.async.batch-size:100}")
+    private int batchSize;
+    @Value("${wallet.async.poll-interval-ms:100}")
+    private long pollIntervalMs;
+    @Value("${wallet.async.max-attempts:10}")
+    private int maxAttempts;
+    @Value("${wallet.async.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+    @Value("${wallet.async.failed-retention-days:7}")
+    private int failedRetentionDays;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            threads.add(Thread.ofPlatform().name("transfer-job-" + i).daemon().start(this::loop));
+        }
+        log.info("Started {} transfer job worker(s)", workers);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        threads.forEach(Thread::interrupt);
+    }
+
+    private void loop() {
+        while (running) {
+            int claimed;
+            try {
+                claimed = runOnce();
+            } catch (RuntimeException e) {
+                log.warn("Transfer job claim failed: {}", e.getMessage());
+                claimed = 0;
+            }
+            if (claimed == 0) {
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Claims and applies the ready jobs of one wallet.
+     *
+     * @return number of jobs claimed (0 when the queue has no ready job)
+     */
+    int runOnce() {
+        List<TransferJob> claimed = new ArrayList<>();
+        BatchTransferWriter.BatchResult result;
+        try {
+            result = dbLimiter.call(() -> transactionTemplate.execute(s -> {
+                List<TransferJob> group = jobs.claimWalletGroup(batchSize);
+                claimed.addAll(group);
+                return group.isEmpty() ? null : complete(group);
+            }));
+        } catch (RuntimeException e) {
+            if (claimed.isEmpty()) throw e;
+            defer(claimed, e);
+            return claimed.size();
+        }
+        if (result == null) return 0;
+
+        // --- After commit: balances written through, as on the single path ---
+        if (balanceCache.isActive()) {
+            for (WalletBalance b : result.balances()) {
+                balanceCache.put(b.walletId(), b.balance(), b.version());
+            }
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (TransferJob job : claimed) {
+            BatchTransferWriter.Outcome outcome = result.outcomes().get(command(job).scopedKey());
+            count(job, outcome.error() == null ? "success" : "failed");
+            Timer.builder("wallet.async.job.latency").tag("type", job.type()).register(meterRegistry)
+                    .record(Duration.between(job.createdAt(), now));
+        }
+        return claimed.size();
+    }
+
+    private BatchTransferWriter.BatchResult complete(List<TransferJob> group) {
+        Map<Long, TransferCommand> byTransactionId = new LinkedHashMap<>();
+        for (TransferJob job : group) byTransactionId.put(job.transactionId(), command(job));
+        BatchTransferWriter.BatchResult result = writer.completePending(byTransactionId);
+
+        List<Long> done = new ArrayList<>();
+        Map<Long, TransferJobRepository.JobError> failed = new HashMap<>();
+        for (TransferJob job : group) {
+            BatchTransferWriter.Outcome outcome = result.outcomes().get(command(job).scopedKey());
+            if (outcome.error() != null) {
+                failed.put(job.transactionId(), new TransferJobRepository.JobError(
+                        outcome.error().getMessage(), outcome.error().getStatusCode()));
+            } else {
+                done.add(job.transactionId());
+            }
+        }
+        jobs.delete(done);
+        jobs.fail(failed);
+        return result;
+    }
+
+    /** The group's transaction rolled back: the jobs are still queued; back off so a bad group cannot spin. */
+    private void defer(List<TransferJob> group, RuntimeException cause) {
+        List<Long> ids = group.stream().map(TransferJob::transactionId).toList();
+        log.debug("Transfer jobs {} aborted, deferring: {}", ids, cause.getMessage());
+        try {
+            transactionTemplate.executeWithoutResult(s -> {
+                List<Long> exhausted = jobs.defer(ids, retryBackoffMs, maxAttempts,
+                        "Transfer failed after " + maxAttempts + " attempts");
+                if (!exhausted.isEmpty()) {
+                    txRepo.updateStatus(exhausted, "FAILED");
+                    log.warn("Transfer jobs {} failed after {} attempts", exhausted, maxAttempts);
+                }
+            });
+            group.forEach(job -> count(job, "deferred"));
+        } catch (RuntimeException e) {
+            // Jobs stay ready and are claimed again without backoff
+            log.warn("Could not defer transfer jobs {}", ids, e);
+        }
+    }
+
+    private static TransferCommand command(TransferJob job) {
+        return new TransferCommand(job.idempotencyKey(), job.scopeId(), job.type(), job.fromWalletId(),
+                job.toWalletId(), job.amount());
+    }
+
+    private void count(TransferJob job, String result) {
+        meterRegistry.counter("wallet.async.jobs", "type", job.type(), "result", result).increment();
+    }
+
+    @Scheduled(cron = "${wallet.async.purge.cron:0 */15 * * * *}")
+    public void purgeFailed() {
+        LocalDateTime cutoff = LocalDateTime.now().minusDays(failedRetentionDays);
+        try {
+            int deleted = jobs.purgeFailedBefore(cutoff, 10_000);
+            if (deleted > 0) {
+                log.info("Purged {} failed transfer job(s) created before {}", deleted, cutoff);
+            }
+        } catch (Exception e) {
+            log.error("Failed transfer job purge failed", e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.walletService.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Decides which wallets of a transfer are row-locked. Only user wallets carry an invariant
+ * (non-negative, exact running balance), so only they are locked: the debited user wallet on SPEND,
+ * the credited user wallet on TOPUP/BONUS. The system side (Treasury, Bonus Pool, Revenue and their
+ * shards) is never funds-checked and is append-only: it gets a ledger entry but no lock and no
+ * balance row update, so it is not a contention point.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransferLockingStrategy {
+
+    private final SystemWalletShards systemWallets;
+
+    /**
+     * Wallet ids to lock, in ascending id order (deadlock avoidance if more than one).
+     */
+    public List<Long> walletsToLock(Long fromWalletId, Long toWalletId) {
+        return plan(fromWalletId, toWalletId, systemWallets::isSystemWallet);
+    }
+
+    /**
+     * Whether the wallet's balance row is maintained inline by transfers (i.e. it is locked).
+     */
+    public boolean isLocked(Long walletId) {
+        return !systemWallets.isSystemWallet(walletId);
+    }
+
+    static List<Long> plan(Long fromWalletId, Long toWalletId, Predicate<Long> isSystemWallet) {
+        boolean lockFrom = !isSystemWallet.test(fromWalletId);
+        boolean lockTo = !isSystemWallet.test(toWalletId);
+        if (lockFrom && lockTo) {
+            return List.of(Math.min(fromWalletId, toWalletId), Math.max(fromWalletId, toWalletId));
+        }
+        if (lockFrom) return List.of(fromWalletId);
+        if (lockTo) return List.of(toWalletId);
+        return List.of();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.walletService.service;
+
+import com.example.walletService.exception.TransferPendingException;
+import com.example.walletService.exception.WalletException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Latency breakdown of the transfer pipeline, so a p99 spike can be attributed to a phase.
+ * <ul>
+ *   <li>wallet.transfer (type, outcome): end to end per owned transfer; outcome is success, duplicate,
+ *       insufficient_funds, retried (succeeded after at least one retry), exhausted (retries used up or shed)
+ *       or failed</li>
+ *   <li>wallet.transfer.phase (type, phase): idempotency_cache, idempotency_lookup, key_claim, lock_wait
+ *       (wallet_read in optimistic mode), write (ledger legs and balance updates, flushed), commit,
+ *       transfer_function (native engine), retry_backoff</li>
+ *   <li>wallet.transfer.retries (type), wallet.idempotency.cache.requests (result)</li>
+ *   <li>wallet.transfer.inflight (walletClass): system_to_user, user_to_system or system_to_system</li>
+ * </ul>
+ * Histogram buckets are enabled in application.properties (management.metrics.distribution.*).
+ */
+@Component
+public class TransferMetrics {
+
+    public static final String IDEMPOTENCY_CACHE = "idempotency_cache";
+    public static final String IDEMPOTENCY_LOOKUP = "idempotency_lookup";
+    public static final String KEY_CLAIM = "key_claim";
+    public static final String LOCK_WAIT = "lock_wait";
+    public static final String WALLET_READ = "wallet_read";
+    public static final String WRITE = "write";
+    public static final String COMMIT = "commit";
+    public static final String TRANSFER_FUNCTION = "transfer_function";
+    public static final String RETRY_BACKOFF = "retry_backoff";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer> phaseTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> outcomeTimers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> retryCounters = new ConcurrentHashMap<>();
+    private final Map<String, Counter> cacheCounters = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    public TransferMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /** Starts the end-to-end measurement of one transfer; close it exactly once. */
+    public Observation start(TransferCommand cmd) {
+        return new Observation(cmd.type(), walletClass(cmd));
+    }
+
+    public <T> T time(String phase, String type, Supplier<T> work) {
+        long started = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(phase, type, System.nanoTime() - started);
+        }
+    }
+
+    public void record(String phase, String type, long nanos) {
+        phaseTimers.computeIfAbsent(phase + '|' + type, k -> Timer.builder("wallet.transfer.phase")
+                        .tag("phase", phase).tag("type", type).register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Times the COMMIT of the current transaction (from beforeCommit to afterCompletion). Must be called
+     * inside an active transaction.
+     */
+    public void timeCommit(String type) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private long started;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                started = System.nanoTime();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (started != 0 && status == STATUS_COMMITTED) {
+                    record(COMMIT, type, System.nanoTime() - started);
+                }
+            }
+        });
+    }
+
+    /** Result of the idempotency cache claim-or-get: claimed, in_progress or completed. */
+    public void idempotencyCache(String result) {
+        cacheCounters.computeIfAbsent(result, r -> Counter.builder("wallet.idempotency.cache.requests")
+                .tag("result", r).register(registry)).increment();
+    }
+
+    private static String walletClass(TransferCommand cmd) {
+        return switch (cmd.type()) {
+            case "SPEND" -> "user_to_system";
+            case "REBALANCE" -> "system_to_system";
+            default -> "system_to_user";
+        };
+    }
+
+    private AtomicInteger inFlight(String walletClass) {
+        return inFlight.computeIfAbsent(walletClass, c -> {
+            AtomicInteger n = new AtomicInteger();
+            Gauge.builder("wallet.transfer.inflight", n, AtomicInteger::get).tag("walletClass", c).register(registry);
+            return n;
+        });
+    }
+
+    /** One transfer in flight: counts in the in-flight gauge until closed, then records its outcome. */
+    public final class Observation {
+
+        private final String type;
+        private final AtomicInteger inFlightCount;
+        private final long started = System.nanoTime();
+        private String outcome;
+        private int retries;
+
+        private Observation(String type, String walletClass) {
+            this.type = type;
+            this.inFlightCount = inFlight(walletClass);
+            inFlightCount.incrementAndGet();
+        }
+
+        public String type() {
+            return type;
+        }
+
+        public void duplicate() {
+            outcome = "duplicate";
+        }
+
+        public void retried() {
+            retries++;
+            retryCounters.computeIfAbsent(type, t -> Counter.builder("wallet.transfer.retries")
+                    .tag("type", t).register(registry)).increment();
+        }
+
+        public void exhausted() {
+            outcome = "exhausted";
+        }
+
+        public void succeeded() {
+            close(outcome != null ? outcome : retries > 0 ? "retried" : "success");
+        }
+
+        /**
+         * Insufficient funds is the only 400 the pipeline raises after request validation. A duplicate of a
+         * queued async transfer (answered 202) is "pending", not a failure.
+         */
+        public void failed(Throwable e) {
+            if (e instanceof TransferPendingException) {
+                outcome = "pending";
+            } else if (outcome == null) {
+                outcome = e instanceof WalletException we && we.getStatusCode() == 400 ? "insufficient_funds" : "failed";
+            }
+            close(outcome);
+        }
+
+        private void close(String result) {
+            inFlightCount.decrementAndGet();
+            outcomeTimers.computeIfAbsent(type + '|' + result, k -> Timer.builder("wallet.transfer")
+                            .tag("type", type).tag("outcome", result).register(registry))
+                    .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.walletService.service;
+
+import java.util.List;
+
+/**
+ * Outcome of a transfer executed by a {@link TransferEngine}.
+ *
+ * @param transactionId id of the new transaction, or of the existing one for a duplicate idempotency key
+ * @param applied       false when the idempotency key was already used (nothing was written)
+ * @param balances      new balances of the wallets whose balance row was updated (locked user wallets)
+ */
+public record TransferResult(Long transactionId, boolean applied, List<WalletBalance> balances) {
+
+    public static TransferResult applied(Long transactionId, List<WalletBalance> balances) {
+        return new TransferResult(transactionId, true, balances);
+    }
+
+    public static TransferResult duplicate(Long transactionId) {
+        return new TransferResult(transactionId, false, List.of());
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.walletService.service;
+
+/**
+ * Committed balance of a wallet at a given version (wallets.version), used for write-through caching.
+ */
+public record WalletBalance(Long walletId, long balance, long version) {}
@@ -0,0 +1,123 @@
+package com.example.walletService.service;
+
+import com.example.walletService.cache.BoundedLocalCache;
+import com.example.walletService.entity.Wallet;
+import com.example.walletService.exception.WalletException;
+import com.example.walletService.repository.WalletRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * userId -> walletId resolution. The mapping never changes once the wallet exists (wallets are not deleted
+ * or reassigned), so it is cached without invalidation: a bounded in-process LRU, then Redis when enabled
+ * (shared across instances, TTL only to bound memory), then the DB (index-only scan on
+ * wallets_user_asset_uk). Unknown users are not cached, so a wallet created later is found.
+ * Metrics: wallet.walletid.cache.requests (hit/miss), wallet.walletid.cache.size.
+ */
+@Component
+public class WalletIdResolver {
+
+    private static final String KEY_PREFIX = "wallet-id:";
+
+    private final WalletRepository walletRepo;
+    private final Optional<StringRedisTemplate> redis;
+    private final BoundedLocalCache<Long, Long> local;
+    private final Duration redisTtl;
+
+    public WalletIdResolver(WalletRepository walletRepo,
+                            Optional<StringRedisTemplate> redis,
+                            MeterRegistry meterRegistry,
+                            @Value("${wallet.wallet-id-cache.max-size:200000}") int maxSize,
+                            @Value("${wallet.wallet-id-cache.redis-ttl-hours:168}") long redisTtlHours) {
+        this.walletRepo = walletRepo;
+        this.redis = redis;
+        this.local = new BoundedLocalCache<>(maxSize, 0);
+        this.redisTtl = Duration.ofHours(redisTtlHours);
+
+        FunctionCounter.builder("wallet.walletid.cache.requests", local, BoundedLocalCache::hitCount)
+                .tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder("wallet.walletid.cache.requests", local, BoundedLocalCache::missCount)
+                .tag("result", "miss").register(meterRegistry);
+        Gauge.builder("wallet.walletid.cache.size", local, BoundedLocalCache::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Resolves the user's wallet id.
+     *
+     * @throws WalletException 404 if the user has no wallet
+     */
+    public Long resolve(Long userId) {
+        Long walletId = local.get(userId);
+        if (walletId != null) return walletId;
+        if (redis.isPresent()) {
+            walletId = parse(redis.get().opsForValue().get(KEY_PREFIX + userId));
+            if (walletId != null) {
+                local.put(userId, walletId);
+                return walletId;
+            }
+        }
+        walletId = walletRepo.findIdByUserId(userId)
+                .orElseThrow(() -> new WalletException("User wallet not found", 404));
+        remember(userId, walletId);
+        return walletId;
+    }
+
+    /** Bulk variant for batches: one Redis MGET and one DB query for the misses; unknown users are absent. */
+    public Map<Long, Long> resolveAll(Collection<Long> userIds) {
+        Map<Long, Long> resolved = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long userId : userIds) {
+            Long walletId = local.get(userId);
+            if (walletId != null) resolved.put(userId, walletId);
+            else missing.add(userId);
+        }
+        if (!missing.isEmpty() && redis.isPresent()) {
+            List<String> values = redis.get().opsForValue().multiGet(missing.stream().map(id -> KEY_PREFIX + id).toList());
+            List<Long> stillMissing = new ArrayList<>();
+            for (int i = 0; i < missing.size(); i++) {
+                Long walletId = values == null ? null : parse(values.get(i));
+                if (walletId != null) {
+                    local.put(missing.get(i), walletId);
+                    resolved.put(missing.get(i), walletId);
+                } else {
+                    stillMissing.add(missing.get(i));
+                }
+            }
+            missing = stillMissing;
+        }
+        if (!missing.isEmpty()) {
+            for (Wallet w : walletRepo.findByUserIdIn(missing)) {
+                remember(w.getUserId(), w.getId());
+                resolved.put(w.getUserId(), w.getId());
+            }
+        }
+        return resolved;
+    }
+
+    private void remember(Long userId, Long walletId) {
+        local.put(userId, walletId);
+        redis.ifPresent(r -> r.opsForValue().set(KEY_PREFIX + userId, walletId.toString(), redisTtl));
+    }
+
+    private static Long parse(String value) {
+        if (value == null) return null;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -1,221 +1,351 @@
 package com.example.walletService.service;
 
 import com.example.walletService.cache.BalanceCache;
+import com.example.walletService.dto.HistoryCursor;
 import com.example.walletService.dto.TransactionHistoryItem;
+import com.example.walletService.dto.TransactionHistoryPage;
 import com.example.walletService.dto.TransactionRequest;
 import com.example.walletService.idempotency.IdempotencyCache;
-import com.example.walletService.entity.LedgerEntry;
+import com.example.walletService.idempotency.IdempotencyClaim;
+import com.example.walletService.idempotency.IdempotencyResultWaiter;
+import com.example.walletService.exception.TransferPendingException;
 import com.example.walletService.exception.WalletException;
-import com.example.walletService.entity.Transaction;
-import com.example.walletService.entity.Wallet;
 import com.example.walletService.repository.LedgerRepository;
-import com.example.walletService.repository.TransactionRepository;
+import com.example.walletService.repository.IdempotencyKeyRepository;
+import com.example.walletService.repository.TransferJobRepository;
 import com.example.walletService.repository.WalletRepository;
 import org.springframework.transaction.annotation.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class WalletService {
 
+    private final WalletIdResolver walletIds;
     private final WalletRepository walletRepo;
-    private final TransactionRepository txRepo;
+    private final IdempotencyKeyRepository idempotencyKeys;
+    private final TransferJobRepository transferJobs;
     private final LedgerRepository ledgerRepo;
     private final IdempotencyCache idempotencyCache;
     private final BalanceCache balanceCache;
     private final TransactionTemplate transactionTemplate;
+    private final SystemWalletShards systemWallets;
+    private final TransferEngine transferEngine;
+    private final Optional<GroupCommitExecutor> groupCommit;
+    private final IdempotencyResultWaiter resultWaiter;
+    private final DbConcurrencyLimiter dbLimiter;
+    private final RetryBudget retryBudget;
+    private final TransferLockingStrategy lockingStrategy;
+    private final Optional<WalletStripes> walletStripes;
+    private final TransferMetrics metrics;
 
     @Value("${wallet.concurrency.retry.max-attempts:3}")
     private int retryMaxAttempts;
-    @Value("${wallet.concurrency.retry.base-backoff-ms:50}")
-    private int retryBaseBackoffMs;
-
-    private static final Long TREASURY_WALLET = 1L;
-    private static final Long BONUS_WALLET = 2L;
-    private static final Long REVENUE_WALLET = 3L;
+    /** Without async submissions every keyed transaction is SUCCESS, so duplicates skip the status lookup. */
+    @Value("${wallet.async.enabled:false}")
+    private boolean asyncEnabled;
 
     public Long topup(TransactionRequest req, String idempotencyKey) {
-        return process(req, idempotencyKey, "TOPUP", TREASURY_WALLET, userIdToWalletId(req.userId()));
+        Long userWalletId = walletIds.resolve(req.userId());
+        Long treasury = systemWallets.select(SystemWalletShards.TREASURY_WALLET, userWalletId);
+        return process(new TransferCommand(idempotencyKey, req.userId(), "TOPUP", treasury, userWalletId, req.amount()));
     }
 
     public Long bonus(TransactionRequest req, String idempotencyKey) {
-        return process(req, idempotencyKey, "BONUS", BONUS_WALLET, userIdToWalletId(req.userId()));
+        Long userWalletId = walletIds.resolve(req.userId());
+        Long bonusPool = systemWallets.select(SystemWalletShards.BONUS_WALLET, userWalletId);
+        return process(new TransferCommand(idempotencyKey, req.userId(), "BONUS", bonusPool, userWalletId, req.amount()));
     }
 
     public Long spend(TransactionRequest req, String idempotencyKey) {
-        return process(req, idempotencyKey, "SPEND", userIdToWalletId(req.userId()), REVENUE_WALLET);
+        Long userWalletId = walletIds.resolve(req.userId());
+        Long revenue = systemWallets.select(SystemWalletShards.REVENUE_WALLET, userWalletId);
+        return process(new TransferCommand(idempotencyKey, req.userId(), "SPEND", userWalletId, revenue, req.amount()));
+    }
+
+    /**
+     * Moves funds between two shards of the same system wallet (see {@link SystemWalletRebalanceJob}).
+     * Goes through the normal double-entry path with type REBALANCE; no funds check.
+     */
+    public Long rebalance(Long fromShardId, Long toShardId, long amount, String idempotencyKey) {
+        return process(new TransferCommand(idempotencyKey, TransferCommand.SYSTEM_SCOPE, "REBALANCE", fromShardId, toShardId, amount));
+    }
+
+    /**
+     * Returns one page of transaction history for the user's wallet, newest first, using keyset pagination
+     * on (createdAt, transactionId). Amount is the effect on this wallet (positive = credit, negative = debit).
+     *
+     * @param cursor opaque cursor from the previous page, or null for the first page
+     */
+    @Transactional(readOnly = true)
+    public TransactionHistoryPage getTransactionHistory(Long userId, int limit, String cursor) {
+        Long walletId = walletIds.resolve(userId);
+        // Fetch one extra row to know whether there is a next page
+        Limit fetch = Limit.of(limit + 1);
+        List<TransactionHistoryItem> rows;
+        if (cursor == null) {
+            rows = ledgerRepo.findHistory(walletId, fetch);
+        } else {
+            HistoryCursor after = HistoryCursor.decode(cursor);
+            rows = ledgerRepo.findHistoryAfter(walletId, after.createdAt(), after.transactionId(), fetch);
+        }
+        if (rows.size() <= limit) {
+            return new TransactionHistoryPage(rows, null);
+        }
+        List<TransactionHistoryItem> page = rows.subList(0, limit);
+        return new TransactionHistoryPage(page, HistoryCursor.after(page.get(limit - 1)).encode());
     }
 
     /**
-     * Returns transaction history for the user's wallet (ledger entries for their wallet, with tx type/status).
-     * Ordered by most recent first. Amount is the effect on this wallet (positive = credit, negative = debit).
+     * Streams the full history of a wallet (newest first) to the consumer over a server-side cursor.
+     * Runs in one read-only transaction; the history is never materialized in memory.
      */
     @Transactional(readOnly = true)
-    public List<TransactionHistoryItem> getTransactionHistory(Long userId) {
-        Long walletId = userIdToWalletId(userId);
-        List<LedgerEntry> entries = ledgerRepo.findByWalletIdOrderByCreatedAtDesc(walletId);
-        if (entries.isEmpty()) return List.of();
-        List<Long> txIds = entries.stream().map(LedgerEntry::getTransactionId).distinct().toList();
-        List<Transaction> transactions = txRepo.findAllById(txIds);
-        var txMap = transactions.stream().collect(Collectors.toMap(Transaction::getId, t -> t));
-        return entries.stream()
-                .map(e -> {
-                    Transaction tx = txMap.get(e.getTransactionId());
-                    return new TransactionHistoryItem(
-                            e.getTransactionId(),
-                            tx != null ? tx.getType() : null,
-                            tx != null ? tx.getStatus() : null,
-                            e.getAmount(),
-                            e.getCreatedAt() != null ? e.getCreatedAt() : (tx != null ? tx.getCreatedAt() : null)
-                    );
-                })
-                .toList();
+    public void streamTransactionHistory(Long walletId, Consumer<TransactionHistoryItem> sink) {
+        try (Stream<TransactionHistoryItem> rows = ledgerRepo.streamHistory(walletId)) {
+            rows.forEach(sink);
+        }
     }
 
     /**
-     * Process a transaction with double-entry ledger and deadlock-safe locking.
-     * Idempotency: validate key first (controller), then check cache (fast), claim for parallel safety, then DB.
-     * Sequential and parallel duplicates return the same transaction id; only one request performs the work.
+     * Stored balance and version of a wallet. Read-only, so it is served by a replica when replicas are enabled.
      */
-    private Long process(TransactionRequest req, String idempotencyKey, String type, Long fromWalletId, Long toWalletId) {
+    @Transactional(readOnly = true)
+    public WalletBalance getBalance(Long walletId) {
+        return walletRepo.findById(walletId)
+                .map(w -> new WalletBalance(w.getId(), w.getBalance(), w.getVersion()))
+                .orElseThrow(() -> new WalletException("User wallet not found", 404));
+    }
+
+    /**
+     * Resolves the user's wallet id through the {@link WalletIdResolver} cache (404 if the user has no wallet).
+     */
+    public Long getWalletId(Long userId) {
+        return walletIds.resolve(userId);
+    }
+
+    /**
+     * Process a transaction with double-entry ledger; only user wallets are locked (see {@link TransferLockingStrategy}).
+     * Idempotency: validate key first (controller), then claim-or-get in the cache (one round trip), then DB.
+     * Sequential and parallel duplicates return the same transaction id; only one request performs the work,
+     * concurrent duplicates wait for its result (see {@link IdempotencyResultWaiter}).
+     */
+    private Long process(TransferCommand cmd) {
+        if (!resultWaiter.isEnabled()) return processOwned(cmd, false);
+
+        // --- Same-node duplicates coalesce on the first request's result ---
+        String idempotencyKey = cmd.scopedKey();
+        CompletableFuture<Long> owner = resultWaiter.joinInFlight(idempotencyKey);
+        if (owner != null) {
+            Long txId = resultWaiter.awaitLocal(owner);
+            if (txId != null) return txId;
+            // owner failed or is too slow: go through the normal path (claim, DB unique key). A slow owner
+            // still holds the claim on this node, whose end is never announced back to it: do not wait again
+            return processOwned(cmd, owner.isDone());
+        }
+        Long txId = null;
+        try {
+            txId = processOwned(cmd, true);
+            return txId;
+        } finally {
+            resultWaiter.finish(idempotencyKey, txId);
+        }
+    }
+
+    /**
+     * Runs the transfer as its owner, recording end-to-end latency and outcome (see {@link TransferMetrics}).
+     *
+     * @param awaitRemote whether to wait for a claim held by another instance instead of answering 409
+     */
+    private Long processOwned(TransferCommand cmd, boolean awaitRemote) {
+        TransferMetrics.Observation obs = metrics.start(cmd);
+        try {
+            Long txId = processOwned(cmd, awaitRemote, obs);
+            obs.succeeded();
+            return txId;
+        } catch (RuntimeException e) {
+            obs.failed(e);
+            throw e;
+        }
+    }
+
+    private Long processOwned(TransferCommand cmd, boolean awaitRemote, TransferMetrics.Observation obs) {
+        // Caches are keyed by the scoped key: the same raw key of two users is two operations
+        String idempotencyKey = cmd.scopedKey();
 
-        // --- 1. Cache check (fast path for distributed / retries) ---
+        // --- 1. Cache claim-or-get (fast path for distributed / retries) ---
+        IdempotencyClaim claim = metrics.time(TransferMetrics.IDEMPOTENCY_CACHE, cmd.type(),
+                () -> idempotencyCache.claimOrGet(idempotencyKey));
+        if (claim.status() == IdempotencyClaim.Status.IN_PROGRESS && awaitRemote) {
+            // Held by another instance: wait to be woken instead of sending the client into a retry loop
+            claim = resultWaiter.awaitRemote(idempotencyKey, () -> idempotencyCache.claimOrWatch(idempotencyKey));
+        }
         if (idempotencyCache.isActive()) {
-            Long cachedTxId = idempotencyCache.get(idempotencyKey);
-            if (cachedTxId != null) {
-                return cachedTxId;
+            metrics.idempotencyCache(claim.status().name().toLowerCase());
+        }
+        if (claim.status() == IdempotencyClaim.Status.COMPLETED) {
+            obs.duplicate();
+            return claim.transactionId();
+        }
+        if (claim.status() == IdempotencyClaim.Status.IN_PROGRESS) {
+            throw new WalletException("Another request is processing this idempotency key; retry shortly", 409);
+        }
+        long fence = claim.fencingToken();
+
+        // --- Group commit (opt-in): share one DB transaction with concurrent transfers ---
+        if (groupCommit.isPresent()) {
+            TransferResult result;
+            try {
+                result = groupCommit.get().execute(cmd);
+            } catch (RuntimeException e) {
+                releaseClaim(idempotencyKey, fence);
+                throw e;
             }
-            if (!idempotencyCache.tryClaim(idempotencyKey)) {
-                Long again = idempotencyCache.get(idempotencyKey);
-                if (again != null) return again;
-                throw new WalletException("Another request is processing this idempotency key; retry shortly", 409);
+            if (result != null && result.applied()) {
+                completeClaim(idempotencyKey, fence, result.transactionId());
+                return result.transactionId();
             }
+            if (result != null) {
+                obs.duplicate();
+                return existingResult(idempotencyKey, fence, result.transactionId());
+            }
+            // batch aborted: fall through to the single-transfer path
         }
 
+        List<Long> lockedWallets = lockingStrategy.walletsToLock(cmd.fromWalletId(), cmd.toWalletId());
         int attempts = 0;
+        long[] engineNanos = new long[1];
         while (true) {
+            TransferResult result;
             try {
-                return transactionTemplate.execute(status ->
-                        doProcess(idempotencyKey, req, type, fromWalletId, toWalletId));
+                result = execute(cmd, lockedWallets, engineNanos);
+                if (result.applied()) {
+                    afterCommit(cmd, fence, result);
+                    return result.transactionId();
+                }
             } catch (DataIntegrityViolationException e) {
-                Long existingId = transactionTemplate.execute(s ->
-                        txRepo.findByIdempotencyKey(idempotencyKey).map(Transaction::getId).orElse(null));
+                Long existingId = dbLimiter.call(() -> transactionTemplate.execute(s ->
+                        idempotencyKeys.findTransactionId(cmd.scopeId(), cmd.idempotencyKey()).orElse(null)));
                 if (existingId != null) {
-                    if (idempotencyCache.isActive()) {
-                        idempotencyCache.put(idempotencyKey, existingId, IdempotencyCache.SUCCESS_TTL_SECONDS);
-                    }
-                    return existingId;
+                    obs.duplicate();
+                    return existingResult(idempotencyKey, fence, existingId);
                 }
                 throw e;
             } catch (Exception e) {
-                boolean retryable = LockRetryHelper.isRetryable(e);
-                if (!retryable || attempts >= retryMaxAttempts - 1) {
-                    if (idempotencyCache.isActive()) {
-                        idempotencyCache.delete(idempotencyKey);
-                    }
+                if (!LockRetryHelper.isRetryable(e)) {
+                    releaseClaim(idempotencyKey, fence);
                     throw e;
                 }
+                // Lock wait is the engine call only (stripe and permit queueing excluded); an optimistic
+                // version conflict waited on no lock
+                retryBudget.recordLockFailure(lockedWallets,
+                        LockRetryHelper.isOptimisticConflict(e) ? 0 : engineNanos[0]);
+                if (attempts >= retryMaxAttempts - 1) {
+                    obs.exhausted();
+                    releaseClaim(idempotencyKey, fence);
+                    throw e;
+                }
+                if (!retryBudget.tryAcquireRetry(lockedWallets)) {
+                    // Out of retry budget (globally or for this wallet): shed instead of adding lock pressure
+                    obs.exhausted();
+                    releaseClaim(idempotencyKey, fence);
+                    throw new WalletException("Too much contention on this wallet; retry later", 503);
+                }
+                // Backoff holds no connection and no DB permit; on a virtual thread the sleep unmounts
+                // from the carrier, so a lock storm does not tie up request threads
+                obs.retried();
+                long sleepStarted = System.nanoTime();
                 try {
-                    Thread.sleep(LockRetryHelper.backoffMs(attempts, retryBaseBackoffMs));
+                    Thread.sleep(retryBudget.backoffMs(attempts));
+                    metrics.record(TransferMetrics.RETRY_BACKOFF, cmd.type(), System.nanoTime() - sleepStarted);
                 } catch (InterruptedException ie) {
                     Thread.currentThread().interrupt();
-                    if (idempotencyCache.isActive()) idempotencyCache.delete(idempotencyKey);
+                    releaseClaim(idempotencyKey, fence);
                     throw new RuntimeException("Interrupted during retry", ie);
                 }
                 attempts++;
+                continue;
             }
+            obs.duplicate();
+            return existingResult(idempotencyKey, fence, result.transactionId());
         }
     }
 
     /**
-     * DB path: insert-first to claim idempotency key (unique constraint); then ledger.
-     * Handles parallel requests: second request gets unique violation and returns existing tx id.
+     * Result of a request whose key was already used. Keys of async submissions point at transactions that
+     * may still be PENDING or have FAILED, so the status is checked before the id is reported (and cached)
+     * as this request's result.
+     *
+     * @throws TransferPendingException while the async transfer is queued (answered with 202)
+     * @throws WalletException the recorded error if it failed
      */
-    private Long doProcess(String idempotencyKey, TransactionRequest req, String type, Long fromWalletId, Long toWalletId) {
-
-        // --- 2. DB idempotency check (and claim via insert for parallel safety) ---
-        Optional<Transaction> existing = txRepo.findByIdempotencyKey(idempotencyKey);
-        if (existing.isPresent()) {
-            Long txId = existing.get().getId();
-            if (idempotencyCache.isActive()) {
-                idempotencyCache.put(idempotencyKey, txId, IdempotencyCache.SUCCESS_TTL_SECONDS);
-            }
+    private Long existingResult(String idempotencyKey, long fence, Long txId) {
+        TransferJobRepository.JobStatus status = asyncEnabled
+                ? dbLimiter.call(() -> transferJobs.findStatus(txId)).orElse(null)
+                : null;
+        if (status == null || "SUCCESS".equals(status.status())) {
+            completeClaim(idempotencyKey, fence, txId);
             return txId;
         }
-
-        Transaction tx = new Transaction();
-        tx.setType(type);
-        tx.setStatus("PENDING");
-        tx.setIdempotencyKey(idempotencyKey);
-        try {
-            txRepo.saveAndFlush(tx);
-        } catch (DataIntegrityViolationException e) {
-            Transaction existingTx = txRepo.findByIdempotencyKey(idempotencyKey).orElseThrow(() -> e);
-            if (idempotencyCache.isActive()) {
-                idempotencyCache.put(idempotencyKey, existingTx.getId(), IdempotencyCache.SUCCESS_TTL_SECONDS);
-            }
-            return existingTx.getId();
+        // Not cached: the next retry sees the transaction's new status
+        releaseClaim(idempotencyKey, fence);
+        if ("PENDING".equals(status.status())) {
+            throw new TransferPendingException(txId);
         }
+        throw new WalletException(status.error() != null ? status.error() : "Transfer failed",
+                status.errorStatus() != null ? status.errorStatus() : 500);
+    }
 
-        // --- Deadlock avoidance: always lock in ascending wallet ID order ---
-        Long firstId = Math.min(fromWalletId, toWalletId);
-        Long secondId = Math.max(fromWalletId, toWalletId);
-        Wallet first = walletRepo.lockWalletForUpdate(firstId);
-        Wallet second = walletRepo.lockWalletForUpdate(secondId);
-        Wallet srcWallet = first.getId().equals(fromWalletId) ? first : second;
-        Wallet destWallet = first.getId().equals(toWalletId) ? first : second;
-
-        Long amount = req.amount();
-
-        // --- Check funds only for spending ---
-        if (type.equals("SPEND")) {
-            Long balance = ledgerRepo.getBalance(srcWallet.getId());
-            if (balance < amount) {
-                throw new WalletException("Insufficient funds", 400);
+    /**
+     * One attempt of the transfer. With wallet stripes enabled, same-wallet transfers queue in memory first,
+     * then take a DB permit; the stripe is held across the DB transaction so the row lock is uncontended
+     * on this node.
+     *
+     * @param engineNanos receives how long the engine call took, once stripe and permit are held
+     */
+    private TransferResult execute(TransferCommand cmd, List<Long> lockedWallets, long[] engineNanos) {
+        Supplier<TransferResult> engine = () -> {
+            long started = System.nanoTime();
+            try {
+                return transferEngine.execute(cmd);
+            } finally {
+                engineNanos[0] = System.nanoTime() - started;
             }
+        };
+        if (walletStripes.isEmpty() || lockedWallets.isEmpty()) {
+            return dbLimiter.call(engine);
         }
+        return walletStripes.get().call(lockedWallets, () -> dbLimiter.call(engine));
+    }
 
-        // --- Create Ledger Entries (Double Entry) ---
-        LedgerEntry debit = LedgerEntry.builder()
-                .transactionId(tx.getId())
-                .walletId(srcWallet.getId())
-                .amount(-amount)
-                .build();
-
-        LedgerEntry credit = LedgerEntry.builder()
-                .transactionId(tx.getId())
-                .walletId(destWallet.getId())
-                .amount(amount)
-                .build();
-
-        ledgerRepo.save(debit);
-        ledgerRepo.save(credit);
-
-        // --- Finalize transaction ---
-        tx.setStatus("SUCCESS");
-        txRepo.save(tx);
-
-        if (idempotencyCache.isActive()) {
-            idempotencyCache.put(idempotencyKey, tx.getId(), IdempotencyCache.SUCCESS_TTL_SECONDS);
-        }
+    /** Cache updates once the transfer is committed: balances are written through, never invalidated. */
+    private void afterCommit(TransferCommand cmd, long fence, TransferResult result) {
+        completeClaim(cmd.scopedKey(), fence, result.transactionId());
         if (balanceCache.isActive()) {
-            balanceCache.invalidate(fromWalletId);
-            balanceCache.invalidate(toWalletId);
+            for (WalletBalance b : result.balances()) {
+                balanceCache.put(b.walletId(), b.balance(), b.version());
+            }
         }
-        return tx.getId();
     }
 
-    private Long userIdToWalletId(Long userId) {
-        return walletRepo.findByUserId(userId)
-                .map(Wallet::getId)
-                .orElseThrow(() -> new WalletException("User wallet not found", 404));
+    private void completeClaim(String idempotencyKey, long fence, long txId) {
+        // Announced only if another instance waits for this claim
+        if (idempotencyCache.complete(idempotencyKey, fence, txId)) resultWaiter.publish(idempotencyKey, txId);
+    }
+
+    private void releaseClaim(String idempotencyKey, long fence) {
+        if (idempotencyCache.release(idempotencyKey, fence)) resultWaiter.publish(idempotencyKey, null);
     }
 }
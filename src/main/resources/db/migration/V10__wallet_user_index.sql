@@ -0,0 +1,4 @@
+-- User wallet lookup by user id (every request resolves userId -> walletId on a cache miss).
+-- One wallet per user and asset type; system wallets (user_id NULL) are not covered.
+-- INCLUDE (id) makes the resolution an index-only scan.
+CREATE UNIQUE INDEX wallets_user_asset_uk ON wallets (user_id, asset_type_id) INCLUDE (id) WHERE user_id IS NOT NULL;
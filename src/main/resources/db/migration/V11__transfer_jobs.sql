@@ -0,0 +1,24 @@
+-- Queue of async transfers (POST /wallet/{topup,bonus,spend}/async). The transaction (status PENDING) and
+-- its idempotency key are created together with the job, so the client gets the transaction id at once and
+-- a retry with the same key, sync or async, returns it. Workers claim the ready jobs of one user wallet at a
+-- time under pg_try_advisory_xact_lock(wallet_id), then lock its job rows with a plain FOR UPDATE, and delete
+-- them in the DB transaction that writes their ledger legs. A job that failed for good keeps its error
+-- (reported by the status endpoint) until purged.
+CREATE TABLE transfer_jobs (
+    transaction_id  BIGINT       PRIMARY KEY REFERENCES transactions (id),
+    wallet_id       BIGINT       NOT NULL,   -- the user wallet: jobs are grouped and ordered per wallet
+    from_wallet_id  BIGINT       NOT NULL,
+    to_wallet_id    BIGINT       NOT NULL,
+    amount          BIGINT       NOT NULL,
+    type            VARCHAR(20)  NOT NULL,
+    scope_id        BIGINT       NOT NULL,
+    idempotency_key VARCHAR(200) NOT NULL,
+    attempts        INT          NOT NULL DEFAULT 0,
+    run_after       TIMESTAMP    NOT NULL DEFAULT now(),
+    error           VARCHAR(500),
+    created_at      TIMESTAMP    NOT NULL DEFAULT now()
+);
+
+-- Next ready job (picks the wallet), then the rest of that wallet's ready jobs in submission order
+CREATE INDEX transfer_jobs_ready_idx ON transfer_jobs (run_after, transaction_id) WHERE error IS NULL;
+CREATE INDEX transfer_jobs_wallet_idx ON transfer_jobs (wallet_id, transaction_id) WHERE error IS NULL;
@@ -0,0 +1,3 @@
+-- HTTP status of a failed async job (400 insufficient funds, 500 retries exhausted), so a sync retry with
+-- the same idempotency key answers with the recorded error instead of reporting the transaction as done.
+ALTER TABLE transfer_jobs ADD COLUMN error_status INT;
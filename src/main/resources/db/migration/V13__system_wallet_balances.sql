@@ -0,0 +1,9 @@
+-- Balance snapshots of system wallets (roots and shards): the ledger total, archived partitions included,
+-- of entries created before covered_until. A system wallet's balance is its snapshot plus the entries from
+-- covered_until on, so reads scan recent history only (wallet index range) instead of the whole ledger.
+-- SystemBalanceSnapshotJob moves covered_until forward; a wallet without a row is summed in full.
+CREATE TABLE system_wallet_balances (
+    wallet_id INT PRIMARY KEY REFERENCES wallets(id),
+    balance BIGINT NOT NULL,
+    covered_until TIMESTAMP NOT NULL
+);
@@ -0,0 +1,11 @@
+-- Materialized running balance per wallet, maintained in the same transaction as the ledger insert.
+ALTER TABLE wallets ADD COLUMN balance BIGINT NOT NULL DEFAULT 0;
+
+-- Backfill from the ledger (source of truth)
+UPDATE wallets w
+SET balance = s.total
+FROM (SELECT wallet_id, SUM(amount) AS total FROM ledger_entries GROUP BY wallet_id) s
+WHERE s.wallet_id = w.id;
+
+-- Safety net: user wallets can never go negative (system wallets like Treasury can)
+ALTER TABLE wallets ADD CONSTRAINT wallets_user_balance_non_negative CHECK (user_id IS NULL OR balance >= 0);
@@ -0,0 +1,6 @@
+-- System wallet shards: extra wallets that share the load of a root system wallet (Treasury, Bonus Pool, Revenue).
+-- The root keeps shard_no 0 and parent_wallet_id NULL; shards 1..N-1 are provisioned by the app on startup.
+ALTER TABLE wallets ADD COLUMN parent_wallet_id INT REFERENCES wallets(id);
+ALTER TABLE wallets ADD COLUMN shard_no INT NOT NULL DEFAULT 0;
+
+CREATE UNIQUE INDEX wallets_parent_shard_uk ON wallets (parent_wallet_id, shard_no) WHERE parent_wallet_id IS NOT NULL;
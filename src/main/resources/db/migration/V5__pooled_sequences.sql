@@ -0,0 +1,14 @@
+-- Sequence-based ids with pooled allocation (Hibernate reserves 50 ids per nextval), so inserts can be
+-- JDBC-batched. The column defaults keep using the same sequences for plain SQL inserts; with the pooled
+-- optimizer those never collide with ids handed out by Hibernate, but each one consumes a block of 50,
+-- hence the widening to BIGINT.
+ALTER TABLE ledger_entries ALTER COLUMN transaction_id TYPE BIGINT;
+ALTER TABLE ledger_entries ALTER COLUMN id TYPE BIGINT;
+ALTER TABLE transactions ALTER COLUMN id TYPE BIGINT;
+
+ALTER SEQUENCE transactions_id_seq AS BIGINT INCREMENT BY 50;
+ALTER SEQUENCE ledger_entries_id_seq AS BIGINT INCREMENT BY 50;
+
+-- Next nextval returns max(id) + 100; Hibernate then uses (max + 51 .. max + 100]
+SELECT setval('transactions_id_seq', (SELECT COALESCE(MAX(id), 0) FROM transactions) + 50);
+SELECT setval('ledger_entries_id_seq', (SELECT COALESCE(MAX(id), 0) FROM ledger_entries) + 50);
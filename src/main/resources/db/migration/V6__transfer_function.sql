@@ -0,0 +1,63 @@
+-- Whole transfer as one server-side call (used by wallet.transfer.engine=native).
+-- Same semantics as the JPA engine: idempotency by unique key, lock only the flagged (user) wallets in
+-- ascending id order, funds check on the debited wallet, double-entry, running balance of locked wallets.
+-- Returns one row: OK + new tx id | DUPLICATE + existing tx id | INSUFFICIENT_FUNDS + NULL.
+CREATE OR REPLACE FUNCTION wallet_transfer(
+    p_idempotency_key VARCHAR,
+    p_type            VARCHAR,
+    p_from_wallet_id  BIGINT,
+    p_to_wallet_id    BIGINT,
+    p_amount          BIGINT,
+    p_check_funds     BOOLEAN,
+    p_lock_from       BOOLEAN,
+    p_lock_to         BOOLEAN)
+RETURNS TABLE (result_status VARCHAR, result_tx_id BIGINT)
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    v_tx_id   BIGINT;
+    v_balance BIGINT;
+BEGIN
+    SELECT t.id INTO v_tx_id FROM transactions t WHERE t.idempotency_key = p_idempotency_key;
+    IF FOUND THEN
+        RETURN QUERY SELECT 'DUPLICATE'::VARCHAR, v_tx_id;
+        RETURN;
+    END IF;
+
+    PERFORM 1 FROM wallets w
+    WHERE (w.id = p_from_wallet_id AND p_lock_from) OR (w.id = p_to_wallet_id AND p_lock_to)
+    ORDER BY w.id
+    FOR UPDATE;
+
+    IF p_check_funds THEN
+        SELECT w.balance INTO v_balance FROM wallets w WHERE w.id = p_from_wallet_id;
+        IF v_balance IS NULL OR v_balance < p_amount THEN
+            RETURN QUERY SELECT 'INSUFFICIENT_FUNDS'::VARCHAR, NULL::BIGINT;
+            RETURN;
+        END IF;
+    END IF;
+
+    -- A concurrent request with the same key: wait for it, then report its transaction
+    INSERT INTO transactions (type, idempotency_key, status)
+    VALUES (p_type, p_idempotency_key, 'SUCCESS')
+    ON CONFLICT (idempotency_key) DO NOTHING
+    RETURNING id INTO v_tx_id;
+    IF v_tx_id IS NULL THEN
+        SELECT t.id INTO v_tx_id FROM transactions t WHERE t.idempotency_key = p_idempotency_key;
+        RETURN QUERY SELECT 'DUPLICATE'::VARCHAR, v_tx_id;
+        RETURN;
+    END IF;
+
+    INSERT INTO ledger_entries (transaction_id, wallet_id, amount)
+    VALUES (v_tx_id, p_from_wallet_id, -p_amount), (v_tx_id, p_to_wallet_id, p_amount);
+
+    IF p_lock_from THEN
+        UPDATE wallets SET balance = balance - p_amount WHERE id = p_from_wallet_id;
+    END IF;
+    IF p_lock_to THEN
+        UPDATE wallets SET balance = balance + p_amount WHERE id = p_to_wallet_id;
+    END IF;
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_tx_id;
+END;
+$$;
@@ -0,0 +1,115 @@
+-- ledger_entries becomes a monthly RANGE partition on created_at, with covering indexes for the
+-- balance and history access patterns. Old months can be detached (archive_ledger_partitions) instead
+-- of DELETEd. transactions stays unpartitioned: its global UNIQUE(idempotency_key) and the ledger FK on
+-- transactions(id) cannot be enforced across partitions unless they include created_at.
+
+-- --- 1. Swap in a partitioned table ---
+ALTER TABLE ledger_entries RENAME TO ledger_entries_legacy;
+ALTER TABLE ledger_entries_legacy RENAME CONSTRAINT ledger_entries_pkey TO ledger_entries_legacy_pkey;
+ALTER SEQUENCE ledger_entries_id_seq OWNED BY NONE;
+
+CREATE TABLE ledger_entries (
+    id BIGINT NOT NULL DEFAULT nextval('ledger_entries_id_seq'),
+    transaction_id BIGINT NOT NULL,
+    wallet_id INT NOT NULL,
+    amount BIGINT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (id, created_at),
+    FOREIGN KEY (transaction_id) REFERENCES transactions(id),
+    FOREIGN KEY (wallet_id) REFERENCES wallets(id)
+) PARTITION BY RANGE (created_at);
+
+ALTER SEQUENCE ledger_entries_id_seq OWNED BY ledger_entries.id;
+
+-- Catches rows outside the pre-created months; ensure_ledger_partitions moves them out again
+CREATE TABLE ledger_entries_default PARTITION OF ledger_entries DEFAULT;
+
+-- Balance: index-only SUM(amount) per wallet. History: keyset on (created_at, transaction_id) per wallet.
+CREATE INDEX ledger_entries_wallet_history_idx
+    ON ledger_entries (wallet_id, created_at DESC, transaction_id DESC) INCLUDE (amount);
+-- Ledger legs of a transaction (joins / per-transaction invariant checks)
+CREATE INDEX ledger_entries_transaction_idx ON ledger_entries (transaction_id);
+
+-- Recent transactions (retention, idempotency warm-up)
+CREATE INDEX transactions_created_at_idx ON transactions (created_at);
+
+-- --- 2. Partition maintenance ---
+-- Creates monthly partitions from p_from's month through the current month + p_months_ahead.
+-- Rows that already landed in the default partition for a new month are moved into it.
+CREATE OR REPLACE FUNCTION ensure_ledger_partitions(p_from DATE, p_months_ahead INT)
+RETURNS INT
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    v_month   DATE := date_trunc('month', p_from)::date;
+    v_last    DATE := (date_trunc('month', current_date) + make_interval(months => p_months_ahead))::date;
+    v_next    DATE;
+    v_name    TEXT;
+    v_created INT := 0;
+BEGIN
+    WHILE v_month <= v_last LOOP
+        v_next := (v_month + INTERVAL '1 month')::date;
+        v_name := format('ledger_entries_y%sm%s', to_char(v_month, 'YYYY'), to_char(v_month, 'MM'));
+        IF to_regclass(v_name) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I (LIKE ledger_entries INCLUDING DEFAULTS INCLUDING CONSTRAINTS)', v_name);
+            EXECUTE format(
+                'WITH moved AS (DELETE FROM ledger_entries_default WHERE created_at >= %L AND created_at < %L RETURNING *) '
+                || 'INSERT INTO %I SELECT * FROM moved', v_month, v_next, v_name);
+            EXECUTE format('ALTER TABLE ledger_entries ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)',
+                v_name, v_month, v_next);
+            v_created := v_created + 1;
+        END IF;
+        v_month := v_next;
+    END LOOP;
+    RETURN v_created;
+END;
+$$;
+
+-- Per-wallet totals of detached partitions, so balances and reconciliation stay exact after archival
+CREATE TABLE ledger_archive_totals (
+    partition_name VARCHAR(100) NOT NULL,
+    wallet_id INT NOT NULL REFERENCES wallets(id),
+    amount BIGINT NOT NULL,
+    PRIMARY KEY (partition_name, wallet_id)
+);
+
+-- Detaches monthly partitions that end on or before p_before. The detached tables are left in place
+-- for export/drop by the archival process.
+CREATE OR REPLACE FUNCTION archive_ledger_partitions(p_before DATE)
+RETURNS INT
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    r        RECORD;
+    v_upper  DATE;
+    v_count  INT := 0;
+BEGIN
+    FOR r IN
+        SELECT c.relname
+        FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'ledger_entries'::regclass
+          AND c.relname ~ '^ledger_entries_y[0-9]{4}m[0-9]{2}$'
+        ORDER BY c.relname
+    LOOP
+        -- ledger_entries_yYYYYmMM: year at 17, month at 22
+        v_upper := (to_date(substr(r.relname, 17, 4) || substr(r.relname, 22, 2), 'YYYYMM') + INTERVAL '1 month')::date;
+        IF v_upper <= p_before THEN
+            EXECUTE format(
+                'INSERT INTO ledger_archive_totals (partition_name, wallet_id, amount) '
+                || 'SELECT %L, wallet_id, SUM(amount) FROM %I GROUP BY wallet_id', r.relname, r.relname);
+            EXECUTE format('ALTER TABLE ledger_entries DETACH PARTITION %I', r.relname);
+            v_count := v_count + 1;
+        END IF;
+    END LOOP;
+    RETURN v_count;
+END;
+$$;
+
+-- --- 3. Move existing rows ---
+SELECT ensure_ledger_partitions(
+    COALESCE((SELECT MIN(created_at)::date FROM ledger_entries_legacy), current_date), 3);
+
+INSERT INTO ledger_entries (id, transaction_id, wallet_id, amount, created_at)
+SELECT id, transaction_id, wallet_id, amount, COALESCE(created_at, now()) FROM ledger_entries_legacy;
+
+DROP TABLE ledger_entries_legacy;
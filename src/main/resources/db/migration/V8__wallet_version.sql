@@ -0,0 +1,75 @@
+-- Per-wallet version, bumped with every balance change (JPA @Version on Wallet). Balance caches use it
+-- to never overwrite a newer balance with an older one.
+ALTER TABLE wallets ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+-- wallet_transfer now bumps the version and returns the new balance/version of the locked wallets
+DROP FUNCTION wallet_transfer(VARCHAR, VARCHAR, BIGINT, BIGINT, BIGINT, BOOLEAN, BOOLEAN, BOOLEAN);
+
+CREATE FUNCTION wallet_transfer(
+    p_idempotency_key VARCHAR,
+    p_type            VARCHAR,
+    p_from_wallet_id  BIGINT,
+    p_to_wallet_id    BIGINT,
+    p_amount          BIGINT,
+    p_check_funds     BOOLEAN,
+    p_lock_from       BOOLEAN,
+    p_lock_to         BOOLEAN)
+RETURNS TABLE (result_status VARCHAR, result_tx_id BIGINT,
+               from_balance BIGINT, from_version BIGINT, to_balance BIGINT, to_version BIGINT)
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    v_tx_id        BIGINT;
+    v_balance      BIGINT;
+    v_from_balance BIGINT;
+    v_from_version BIGINT;
+    v_to_balance   BIGINT;
+    v_to_version   BIGINT;
+BEGIN
+    SELECT t.id INTO v_tx_id FROM transactions t WHERE t.idempotency_key = p_idempotency_key;
+    IF FOUND THEN
+        RETURN QUERY SELECT 'DUPLICATE'::VARCHAR, v_tx_id, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    PERFORM 1 FROM wallets w
+    WHERE (w.id = p_from_wallet_id AND p_lock_from) OR (w.id = p_to_wallet_id AND p_lock_to)
+    ORDER BY w.id
+    FOR UPDATE;
+
+    IF p_check_funds THEN
+        SELECT w.balance INTO v_balance FROM wallets w WHERE w.id = p_from_wallet_id;
+        IF v_balance IS NULL OR v_balance < p_amount THEN
+            RETURN QUERY SELECT 'INSUFFICIENT_FUNDS'::VARCHAR, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+            RETURN;
+        END IF;
+    END IF;
+
+    -- A concurrent request with the same key: wait for it, then report its transaction
+    INSERT INTO transactions (type, idempotency_key, status)
+    VALUES (p_type, p_idempotency_key, 'SUCCESS')
+    ON CONFLICT (idempotency_key) DO NOTHING
+    RETURNING id INTO v_tx_id;
+    IF v_tx_id IS NULL THEN
+        SELECT t.id INTO v_tx_id FROM transactions t WHERE t.idempotency_key = p_idempotency_key;
+        RETURN QUERY SELECT 'DUPLICATE'::VARCHAR, v_tx_id, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    INSERT INTO ledger_entries (transaction_id, wallet_id, amount)
+    VALUES (v_tx_id, p_from_wallet_id, -p_amount), (v_tx_id, p_to_wallet_id, p_amount);
+
+    IF p_lock_from THEN
+        UPDATE wallets w SET balance = w.balance - p_amount, version = w.version + 1
+        WHERE w.id = p_from_wallet_id
+        RETURNING w.balance, w.version INTO v_from_balance, v_from_version;
+    END IF;
+    IF p_lock_to THEN
+        UPDATE wallets w SET balance = w.balance + p_amount, version = w.version + 1
+        WHERE w.id = p_to_wallet_id
+        RETURNING w.balance, w.version INTO v_to_balance, v_to_version;
+    END IF;
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_tx_id, v_from_balance, v_from_version, v_to_balance, v_to_version;
+END;
+$$;
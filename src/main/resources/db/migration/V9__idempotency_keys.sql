@@ -0,0 +1,112 @@
+-- Idempotency keys move out of transactions into a compact table keyed by (scope, 128-bit hash).
+-- scope_id is the user id (0 for system-initiated transfers such as REBALANCE), so keys are per user.
+-- key_hash = md5(raw key) as UUID: fixed 16 bytes, so the primary key index stays small and in cache;
+-- raw_key is kept only to detect hash collisions. Rows older than wallet.idempotency.retention-days are
+-- purged by IdempotencyKeyPurgeJob; after that a reused key is treated as a new request.
+CREATE TABLE idempotency_keys (
+    scope_id       BIGINT       NOT NULL,
+    key_hash       UUID         NOT NULL,
+    raw_key        VARCHAR(200) NOT NULL,
+    transaction_id BIGINT       NOT NULL,
+    created_at     TIMESTAMP    NOT NULL DEFAULT now(),
+    PRIMARY KEY (scope_id, key_hash)
+);
+
+CREATE INDEX idempotency_keys_created_at_idx ON idempotency_keys (created_at);
+
+-- Backfill from existing transactions; the scope is the user of the transfer's user wallet leg
+INSERT INTO idempotency_keys (scope_id, key_hash, raw_key, transaction_id, created_at)
+SELECT COALESCE(u.user_id, 0), md5(t.idempotency_key)::uuid, t.idempotency_key, t.id, COALESCE(t.created_at, now())
+FROM transactions t
+LEFT JOIN LATERAL (
+    SELECT w.user_id
+    FROM ledger_entries l
+    JOIN wallets w ON w.id = l.wallet_id
+    WHERE l.transaction_id = t.id AND w.user_id IS NOT NULL
+    LIMIT 1
+) u ON true;
+
+-- transactions.idempotency_key stays as an audit column, without the ever-growing unique btree
+ALTER TABLE transactions DROP CONSTRAINT transactions_idempotency_key_key;
+
+-- wallet_transfer: per-user scope, claims the key in idempotency_keys
+DROP FUNCTION wallet_transfer(VARCHAR, VARCHAR, BIGINT, BIGINT, BIGINT, BOOLEAN, BOOLEAN, BOOLEAN);
+
+CREATE FUNCTION wallet_transfer(
+    p_idempotency_key VARCHAR,
+    p_scope_id        BIGINT,
+    p_type            VARCHAR,
+    p_from_wallet_id  BIGINT,
+    p_to_wallet_id    BIGINT,
+    p_amount          BIGINT,
+    p_check_funds     BOOLEAN,
+    p_lock_from       BOOLEAN,
+    p_lock_to         BOOLEAN)
+RETURNS TABLE (result_status VARCHAR, result_tx_id BIGINT,
+               from_balance BIGINT, from_version BIGINT, to_balance BIGINT, to_version BIGINT)
+LANGUAGE plpgsql
+AS $$
+DECLARE
+    v_key_hash     UUID := md5(p_idempotency_key)::uuid;
+    v_raw_key      VARCHAR;
+    v_tx_id        BIGINT;
+    v_balance      BIGINT;
+    v_from_balance BIGINT;
+    v_from_version BIGINT;
+    v_to_balance   BIGINT;
+    v_to_version   BIGINT;
+BEGIN
+    SELECT k.transaction_id, k.raw_key INTO v_tx_id, v_raw_key
+    FROM idempotency_keys k WHERE k.scope_id = p_scope_id AND k.key_hash = v_key_hash;
+    IF FOUND THEN
+        RETURN QUERY SELECT CASE WHEN v_raw_key = p_idempotency_key THEN 'DUPLICATE' ELSE 'KEY_COLLISION' END::VARCHAR,
+                            v_tx_id, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    PERFORM 1 FROM wallets w
+    WHERE (w.id = p_from_wallet_id AND p_lock_from) OR (w.id = p_to_wallet_id AND p_lock_to)
+    ORDER BY w.id
+    FOR UPDATE;
+
+    IF p_check_funds THEN
+        SELECT w.balance INTO v_balance FROM wallets w WHERE w.id = p_from_wallet_id;
+        IF v_balance IS NULL OR v_balance < p_amount THEN
+            RETURN QUERY SELECT 'INSUFFICIENT_FUNDS'::VARCHAR, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+            RETURN;
+        END IF;
+    END IF;
+
+    -- Claim the key; a concurrent request with the same key: wait for it, then report its transaction
+    v_tx_id := nextval('transactions_id_seq');
+    INSERT INTO idempotency_keys (scope_id, key_hash, raw_key, transaction_id)
+    VALUES (p_scope_id, v_key_hash, p_idempotency_key, v_tx_id)
+    ON CONFLICT (scope_id, key_hash) DO NOTHING;
+    IF NOT FOUND THEN
+        SELECT k.transaction_id, k.raw_key INTO v_tx_id, v_raw_key
+        FROM idempotency_keys k WHERE k.scope_id = p_scope_id AND k.key_hash = v_key_hash;
+        RETURN QUERY SELECT CASE WHEN v_raw_key = p_idempotency_key THEN 'DUPLICATE' ELSE 'KEY_COLLISION' END::VARCHAR,
+                            v_tx_id, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT, NULL::BIGINT;
+        RETURN;
+    END IF;
+
+    INSERT INTO transactions (id, type, idempotency_key, status)
+    VALUES (v_tx_id, p_type, p_idempotency_key, 'SUCCESS');
+
+    INSERT INTO ledger_entries (transaction_id, wallet_id, amount)
+    VALUES (v_tx_id, p_from_wallet_id, -p_amount), (v_tx_id, p_to_wallet_id, p_amount);
+
+    IF p_lock_from THEN
+        UPDATE wallets w SET balance = w.balance - p_amount, version = w.version + 1
+        WHERE w.id = p_from_wallet_id
+        RETURNING w.balance, w.version INTO v_from_balance, v_from_version;
+    END IF;
+    IF p_lock_to THEN
+        UPDATE wallets w SET balance = w.balance + p_amount, version = w.version + 1
+        WHERE w.id = p_to_wallet_id
+        RETURNING w.balance, w.version INTO v_to_balance, v_to_version;
+    END IF;
+
+    RETURN QUERY SELECT 'OK'::VARCHAR, v_tx_id, v_from_balance, v_from_version, v_to_balance, v_to_version;
+END;
+$$;
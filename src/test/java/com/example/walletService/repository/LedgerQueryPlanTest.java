@@ -0,0 +1,81 @@
+package com.example.walletService.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the balance and history access patterns are served by the V7 covering index. On the
+ * partitioned ledger the plan names the index of each month's partition, so those (attached to
+ * ledger_entries_wallet_history_idx) are accepted too. Sequential scans are disabled for the transaction
+ * so the tiny test data set does not hide whether the index can serve the query. The same queries are then
+ * planned again with the index dropped (rolled back with the test transaction), as the before/after
+ * comparison: the balance falls back to a sequential scan of the ledger.
+ */
+@SpringBootTest
+@Transactional
+class LedgerQueryPlanTest {
+
+    private static final String WALLET_INDEX = "ledger_entries_wallet_history_idx";
+    private static final String BALANCE_SQL =
+            "SELECT COALESCE(SUM(amount), 0) FROM ledger_entries WHERE wallet_id = 4";
+    private static final String HISTORY_SQL = """
+            SELECT l.transaction_id, t.type, t.status, l.amount, l.created_at
+            FROM ledger_entries l JOIN transactions t ON t.id = l.transaction_id
+            WHERE l.wallet_id = 4
+              AND (l.created_at < now() OR (l.created_at = now() AND l.transaction_id < 1000000))
+            ORDER BY l.created_at DESC, l.transaction_id DESC
+            LIMIT 51""";
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void balanceAndHistoryUseWalletIndex() {
+        jdbc.execute("SET LOCAL enable_seqscan = off");
+        List<String> indexNames = walletIndexNames();
+
+        String balance = explain(BALANCE_SQL);
+        String history = explain(HISTORY_SQL);
+
+        assertThat(usesAny(balance, indexNames)).as("balance plan uses %s:%n%s", WALLET_INDEX, balance).isTrue();
+        assertThat(usesAny(history, indexNames)).as("history plan uses %s:%n%s", WALLET_INDEX, history).isTrue();
+
+        jdbc.execute("DROP INDEX " + WALLET_INDEX);
+        String balanceBefore = explain(BALANCE_SQL);
+        String historyBefore = explain(HISTORY_SQL);
+
+        assertThat(balanceBefore).as("balance plan without %s:%n%s%nwith it:%n%s", WALLET_INDEX, balanceBefore, balance)
+                .isNotEqualTo(balance)
+                .contains("Seq Scan on ledger_entries");
+        assertThat(usesAny(historyBefore, indexNames))
+                .as("history plan without %s:%n%s%nwith it:%n%s", WALLET_INDEX, historyBefore, history)
+                .isFalse();
+    }
+
+    /** The parent index and the per-partition indexes attached to it. */
+    private List<String> walletIndexNames() {
+        List<String> names = new ArrayList<>(jdbc.queryForList("""
+                SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = ?::regclass
+                """, String.class, WALLET_INDEX));
+        names.add(WALLET_INDEX);
+        return names;
+    }
+
+    private static boolean usesAny(String plan, List<String> indexNames) {
+        return indexNames.stream().anyMatch(name -> plan.contains(" using " + name + " "));
+    }
+
+    private String explain(String sql) {
+        List<String> lines = jdbc.queryForList("EXPLAIN " + sql, String.class);
+        return String.join("\n", lines);
+    }
+}
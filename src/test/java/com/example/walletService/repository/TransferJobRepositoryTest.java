@@ -0,0 +1,110 @@
+package com.example.walletService.repository;
+
+import com.example.walletService.repository.TransferJobRepository.TransferJob;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Claims of the async transfer queue against the real database: a wallet is worked by one transaction at a
+ * time, and its jobs come out in submission order even when some of them are deferred. Wallet ids are
+ * made up (transfer_jobs has no FK on them), so the test does not touch real balances.
+ */
+@SpringBootTest
+class TransferJobRepositoryTest {
+
+    private static final long WALLET_A = -9001L;
+    private static final long WALLET_B = -9002L;
+
+    @Autowired
+    private TransferJobRepository jobs;
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final List<Long> created = new ArrayList<>();
+
+    @AfterEach
+    void cleanUp() {
+        for (Long txId : created) {
+            jdbc.update("DELETE FROM transfer_jobs WHERE transaction_id = ?", txId);
+            jdbc.update("DELETE FROM transactions WHERE id = ?", txId);
+        }
+    }
+
+    @Test
+    void walletIsClaimedByOneTransactionAtATime() throws Exception {
+        long first = enqueue(WALLET_A);
+        long second = enqueue(WALLET_A);
+        long third = enqueue(WALLET_A);
+
+        CountDownLatch claimed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<List<Long>> holder = CompletableFuture.supplyAsync(() -> transactionTemplate.execute(s -> {
+            List<Long> ids = ids(jobs.claimWalletGroup(2));
+            jobs.delete(ids);
+            claimed.countDown();
+            await(release);
+            return ids;
+        }));
+        assertThat(claimed.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // The third job is ready, but its wallet is held: it must not overtake the first two
+        List<Long> whileHeld = transactionTemplate.execute(s -> ids(jobs.claimWalletGroup(10)));
+        assertThat(whileHeld).doesNotContain(third);
+
+        release.countDown();
+        assertThat(holder.get(10, TimeUnit.SECONDS)).containsExactly(first, second);
+        List<Long> afterCommit = transactionTemplate.execute(s -> ids(jobs.claimWalletGroup(10)));
+        assertThat(afterCommit).containsExactly(third);
+    }
+
+    @Test
+    void deferredJobHoldsBackLaterJobsOfItsWallet() {
+        long deferred = enqueue(WALLET_A);
+        long later = enqueue(WALLET_A);
+        long otherWallet = enqueue(WALLET_B);
+        transactionTemplate.executeWithoutResult(s -> jobs.defer(List.of(deferred), 60_000, 10, "lock timeout"));
+
+        List<Long> claimed = transactionTemplate.execute(s -> ids(jobs.claimWalletGroup(10)));
+
+        assertThat(claimed).containsExactly(otherWallet).doesNotContain(deferred, later);
+    }
+
+    /** A PENDING transaction with its job, as {@code TransferJobService} creates them. */
+    private long enqueue(long walletId) {
+        Long txId = jdbc.queryForObject("""
+                INSERT INTO transactions (id, type, idempotency_key, status, created_at)
+                VALUES (nextval('transactions_id_seq'), 'TOPUP', ?, 'PENDING', now())
+                RETURNING id
+                """, Long.class, "job-test-" + UUID.randomUUID());
+        created.add(txId);
+        jobs.insert(txId, walletId, -1L, walletId, 10, "TOPUP", 1L, "job-test-" + txId);
+        return txId;
+    }
+
+    private static List<Long> ids(List<TransferJob> claimed) {
+        return claimed.stream().map(TransferJob::transactionId).toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.walletService.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LockRetryHelperTest {
+
+    @Test
+    void retryableSqlStatesAnywhereInTheCauseChain() {
+        for (String state : new String[] {"40P01", "55P03", "40001"}) {
+            Exception wrapped = new RuntimeException("tx failed", new SQLException("boom", state));
+            assertThat(LockRetryHelper.isRetryable(wrapped)).as(state).isTrue();
+        }
+    }
+
+    @Test
+    void translatedLockExceptionsAreRetryable() {
+        assertThat(LockRetryHelper.isRetryable(new CannotAcquireLockException("lock"))).isTrue();
+    }
+
+    @Test
+    void optimisticConflictsAreRetryable() {
+        assertThat(LockRetryHelper.isRetryable(new OptimisticLockingFailureException("version changed"))).isTrue();
+    }
+
+    @Test
+    void otherErrorsAreNotRetried_evenWithLockWordsInTheMessage() {
+        assertThat(LockRetryHelper.isRetryable(new SQLException("deadlock in message only", "23505"))).isFalse();
+        assertThat(LockRetryHelper.isRetryable(new DataIntegrityViolationException("duplicate key"))).isFalse();
+        assertThat(LockRetryHelper.isRetryable(null)).isFalse();
+    }
+
+    @Test
+    void backoffStaysWithinHalfToFullDelayAndRespectsCap() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(LockRetryHelper.backoffMs(0, 50, 1000)).isBetween(25L, 50L);
+            assertThat(LockRetryHelper.backoffMs(2, 50, 1000)).isBetween(100L, 200L);
+            assertThat(LockRetryHelper.backoffMs(10, 50, 1000)).isBetween(500L, 1000L);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.walletService.service;
+
+import com.example.walletService.dto.TransactionRequest;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Optimistic concurrency mode of the JPA engine against the real database: a wallet changed between the
+ * read and the versioned update is retried with fresh reads, and a hot wallet is locked instead. Each test
+ * uses a fresh wallet, so conflicts recorded by one test do not make the other's wallet hot.
+ */
+@SpringBootTest(properties = {
+        "wallet.concurrency.mode=optimistic",
+        "wallet.concurrency.optimistic.hot-wallet-threshold=3"
+})
+class OptimisticTransferTest {
+
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private RetryBudget retryBudget;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private JdbcTemplate jdbc;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void versionConflictIsRetried() throws Exception {
+        long userId = newUser();
+        long walletId = walletService.getWalletId(userId);
+        double retriesBefore = retries();
+
+        // Another writer holds the wallet row: the transfer reads the old version without waiting, then its
+        // conditional update blocks on the row and matches nothing once the writer commits a new version
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(s -> {
+            jdbc.update("UPDATE wallets SET version = version + 1 WHERE id = ?", walletId);
+            locked.countDown();
+            await(commit);
+        }));
+        assertThat(locked.await(10, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<Long> transfer = CompletableFuture.supplyAsync(
+                () -> walletService.topup(new TransactionRequest(userId, 10L, null), key()));
+        waitForLockWaiter();
+        commit.countDown();
+        writer.get(10, TimeUnit.SECONDS);
+
+        assertThat(transfer.get(10, TimeUnit.SECONDS)).isNotNull();
+        assertThat(retries()).isGreaterThan(retriesBefore);
+        assertThat(retryBudget.lockFailures(walletId)).isPositive();
+        assertThat(storedBalance(walletId)).isEqualTo(10L);
+    }
+
+    @Test
+    void hotWalletFallsBackToRowLock() {
+        long userId = newUser();
+        long walletId = walletService.getWalletId(userId);
+        walletService.topup(new TransactionRequest(userId, 10L, null), key());
+        long lockWaits = phaseCount(TransferMetrics.LOCK_WAIT);
+        long reads = phaseCount(TransferMetrics.WALLET_READ);
+
+        // Conflicts far above the threshold, so a decay run in between cannot cool the wallet down
+        for (int i = 0; i < 100; i++) retryBudget.recordLockFailure(List.of(walletId), 0);
+        walletService.topup(new TransactionRequest(userId, 10L, null), key());
+
+        assertThat(phaseCount(TransferMetrics.LOCK_WAIT)).isEqualTo(lockWaits + 1);
+        assertThat(phaseCount(TransferMetrics.WALLET_READ)).isEqualTo(reads);
+        assertThat(storedBalance(walletId)).isEqualTo(20L);
+    }
+
+    private long newUser() {
+        long userId = 900_000_000L + ThreadLocalRandom.current().nextInt(100_000_000);
+        jdbc.update("INSERT INTO wallets (user_id, asset_type_id) VALUES (?, 1)", userId);
+        return userId;
+    }
+
+    /** Blocks until some session waits on a row lock (the transfer's conditional update). */
+    private void waitForLockWaiter() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            Integer waiting = jdbc.queryForObject(
+                    "SELECT COUNT(*) FROM pg_stat_activity WHERE wait_event_type = 'Lock'", Integer.class);
+            if (waiting != null && waiting > 0) return;
+            Thread.sleep(20);
+        }
+        throw new AssertionError("Transfer never waited on the wallet row");
+    }
+
+    private double retries() {
+        return meterRegistry.counter("wallet.transfer.retries", "type", "TOPUP").count();
+    }
+
+    private long phaseCount(String phase) {
+        Timer timer = meterRegistry.find("wallet.transfer.phase").tag("phase", phase).tag("type", "TOPUP").timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private long storedBalance(long walletId) {
+        return jdbc.queryForObject("SELECT balance FROM wallets WHERE id = ?", Long.class, walletId);
+    }
+
+    private static String key() {
+        return "test-optimistic-" + UUID.randomUUID();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
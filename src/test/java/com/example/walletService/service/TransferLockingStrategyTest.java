@@ -0,0 +1,36 @@
+package com.example.walletService.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransferLockingStrategyTest {
+
+    // Treasury, Bonus Pool, Revenue and one Treasury shard
+    private final Predicate<Long> isSystem = Set.of(1L, 2L, 3L, 10L)::contains;
+
+    @Test
+    void topupAndBonusLockOnlyTheCreditedUserWallet() {
+        assertThat(TransferLockingStrategy.plan(1L, 4L, isSystem)).containsExactly(4L);
+        assertThat(TransferLockingStrategy.plan(2L, 5L, isSystem)).containsExactly(5L);
+        assertThat(TransferLockingStrategy.plan(10L, 4L, isSystem)).containsExactly(4L);
+    }
+
+    @Test
+    void spendLocksOnlyTheDebitedUserWallet() {
+        assertThat(TransferLockingStrategy.plan(4L, 3L, isSystem)).containsExactly(4L);
+    }
+
+    @Test
+    void systemToSystemLocksNothing() {
+        assertThat(TransferLockingStrategy.plan(1L, 10L, isSystem)).isEmpty();
+    }
+
+    @Test
+    void userToUserLocksBothInAscendingOrder() {
+        assertThat(TransferLockingStrategy.plan(7L, 4L, isSystem)).containsExactly(4L, 7L);
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.walletService.service;
+
+import com.example.walletService.dto.TransactionRequest;
+import com.example.walletService.exception.WalletException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Concurrent transfers against the real database: the user-wallet-only locking must keep balances
+ * exact and non-negative, and the ledger must stay balanced per transaction.
+ */
+@SpringBootTest
+class WalletServiceConcurrencyTest {
+
+    private static final long USER_1 = 1L;
+    private static final long USER_2 = 2L;
+
+    @Autowired
+    private WalletService walletService;
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Test
+    void concurrentSpendsNeverOverdraw() throws Exception {
+        long start = storedBalance(USER_1);
+        long amount = Math.max(1, start / 20);
+        int attempts = 30;
+        long expectedSuccesses = Math.min(attempts, start / amount);
+
+        AtomicInteger ok = new AtomicInteger();
+        AtomicInteger insufficient = new AtomicInteger();
+        runConcurrently(attempts, i -> {
+            try {
+                walletService.spend(new TransactionRequest(USER_1, amount, null), key("spend"));
+                ok.incrementAndGet();
+            } catch (WalletException e) {
+                assertThat(e.getStatusCode()).isEqualTo(400);
+                insufficient.incrementAndGet();
+            }
+        });
+
+        assertThat(ok.get()).isEqualTo(expectedSuccesses);
+        assertThat(ok.get() + insufficient.get()).isEqualTo(attempts);
+        assertThat(storedBalance(USER_1)).isEqualTo(start - ok.get() * amount).isNotNegative();
+        assertLedgerInvariants();
+    }
+
+    @Test
+    void concurrentTopupsAndBonusesAllApply() throws Exception {
+        long start = storedBalance(USER_2);
+        int attempts = 40;
+        runConcurrently(attempts, i -> {
+            TransactionRequest req = new TransactionRequest(USER_2, 5L, null);
+            if (i % 2 == 0) walletService.topup(req, key("topup"));
+            else walletService.bonus(req, key("bonus"));
+        });
+
+        assertThat(storedBalance(USER_2)).isEqualTo(start + attempts * 5L);
+        assertLedgerInvariants();
+    }
+
+    @Test
+    void parallelDuplicatesReturnSameTransaction() throws Exception {
+        String key = key("dup");
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        runConcurrently(10, i -> {
+            try {
+                ids.add(walletService.topup(new TransactionRequest(USER_2, 1L, null), key));
+            } catch (WalletException e) {
+                // 409 while another request holds the idempotency claim is acceptable
+                assertThat(e.getStatusCode()).isEqualTo(409);
+            }
+        });
+
+        assertThat(ids).hasSize(1);
+        assertLedgerInvariants();
+    }
+
+    private void assertLedgerInvariants() {
+        Integer unbalancedTx = jdbc.queryForObject("""
+                SELECT COUNT(*) FROM (
+                    SELECT transaction_id FROM ledger_entries GROUP BY transaction_id HAVING SUM(amount) <> 0
+                ) t""", Integer.class);
+        assertThat(unbalancedTx).isZero();
+
+        Integer drifted = jdbc.queryForObject("""
+                SELECT COUNT(*) FROM wallets w
+                WHERE w.user_id IS NOT NULL
+                  AND w.balance <> (SELECT COALESCE(SUM(l.amount), 0) FROM ledger_entries l WHERE l.wallet_id = w.id)
+                """, Integer.class);
+        assertThat(drifted).isZero();
+    }
+
+    private long storedBalance(long userId) {
+        return jdbc.queryForObject("SELECT balance FROM wallets WHERE user_id = ?", Long.class, userId);
+    }
+
+    private static String key(String prefix) {
+        return "test-" + prefix + "-" + UUID.randomUUID();
+    }
+
+    private static void runConcurrently(int tasks, ThrowingIntConsumer body) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < tasks; i++) {
+                int n = i;
+                futures.add(pool.submit(() -> {
+                    body.accept(n);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) f.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThrowingIntConsumer {
+        void accept(int i) throws Exception;
+    }
+}